@@ -0,0 +1,256 @@
+package io.trino.s2.geometry.functions;
+
+import com.google.common.geometry.S2Cap;
+import com.google.common.geometry.S2CellId;
+import com.google.common.geometry.S2Point;
+import io.trino.spi.TrinoException;
+
+import java.util.Arrays;
+
+import static io.trino.spi.StandardErrorCode.INVALID_FUNCTION_ARGUMENT;
+
+/**
+ * Allocation free S2RegionCoverer.getSimpleCovering of a cap.
+ *
+ * Flood fills the cells of one level from a start cell like the library does, with the
+ * cell ids kept in a primitive stack and hash set and S2Cap.mayIntersect(S2Cell) worked
+ * out on the raw cell id. Cells are written in the same order as the library.
+ */
+final class S2CapCoverer {
+
+    private final double axisX;
+    private final double axisY;
+    private final double axisZ;
+    private final double radius2;
+    private final int maxCells;
+
+    private long[] stack = new long[64];
+    private int stackSize;
+
+    // open addressing set of visited ids, 0 is never a valid cell id
+    private long[] visited = new long[256];
+    private int visitedSize;
+
+    // cell being tested, vertices as x0, y0, z0, x1, ...
+    private final double[] vertices = new double[12];
+    private int face;
+    private double uMin;
+    private double uMax;
+    private double vMin;
+    private double vMax;
+
+    private S2CapCoverer(S2Cap cap, int maxCells) {
+        S2Point axis = cap.axis();
+        this.axisX = axis.getX();
+        this.axisY = axis.getY();
+        this.axisZ = axis.getZ();
+        this.radius2 = cap.radius().getLength2();
+        this.maxCells = maxCells;
+    }
+
+    /**
+     * Writes the cells at level intersecting the cap, failing once more than maxCells are found.
+     */
+    static void cover(S2Cap cap, int level, int maxCells, S2CellWriter output) {
+        long start = S2CellId.fromPoint(cap.axis()).parent(level).id();
+        new S2CapCoverer(cap, maxCells).floodFill(start, output);
+    }
+
+    private void floodFill(long start, S2CellWriter output) {
+        addVisited(start);
+        push(start);
+        while (stackSize > 0) {
+            long id = stack[--stackSize];
+            if (!mayIntersect(id)) continue;
+            output.write(id);
+            if (output.count() > maxCells) {
+                throw new TrinoException(INVALID_FUNCTION_ARGUMENT, "Radius cover exceeds " + maxCells + " cells");
+            }
+
+            // S2CellId.getEdgeNeighbors order: bottom, right, top, left
+            int level = S2Helper.level(id);
+            int size = S2Helper.sizeIJ(level);
+            long ij = S2Helper.toIJ(id);
+            int i = (int) (ij >>> 32);
+            int j = (int) ij;
+            int cellFace = S2Helper.face(id);
+            visit(S2Helper.parent(S2Helper.fromFaceIJSame(cellFace, i, j - size, j - size >= 0), level));
+            visit(S2Helper.parent(S2Helper.fromFaceIJSame(cellFace, i + size, j, i + size < S2CellId.MAX_SIZE), level));
+            visit(S2Helper.parent(S2Helper.fromFaceIJSame(cellFace, i, j + size, j + size < S2CellId.MAX_SIZE), level));
+            visit(S2Helper.parent(S2Helper.fromFaceIJSame(cellFace, i - size, j, i - size >= 0), level));
+        }
+    }
+
+    private void visit(long id) {
+        if (addVisited(id)) {
+            push(id);
+        }
+    }
+
+    private void push(long id) {
+        if (stackSize == stack.length) {
+            stack = Arrays.copyOf(stack, stack.length * 2);
+        }
+        stack[stackSize++] = id;
+    }
+
+    private boolean addVisited(long id) {
+        if (2 * (visitedSize + 1) > visited.length) {
+            long[] old = visited;
+            visited = new long[old.length * 2];
+            for (long value : old) {
+                if (value != 0) insert(value);
+            }
+        }
+        if (insert(id)) {
+            visitedSize++;
+            return true;
+        }
+        return false;
+    }
+
+    private boolean insert(long id) {
+        int mask = visited.length - 1;
+        int index = (int) ((id * 0x9E3779B97F4A7C15L) >>> 32) & mask;
+        while (visited[index] != 0) {
+            if (visited[index] == id) return false;
+            index = (index + 1) & mask;
+        }
+        visited[index] = id;
+        return true;
+    }
+
+    // S2Cap.mayIntersect(new S2Cell(new S2CellId(id))) with the same floating point operations
+    private boolean mayIntersect(long id) {
+        int size = S2Helper.sizeIJ(S2Helper.level(id));
+        long ij = S2Helper.toIJ(id);
+        int i = (int) (ij >>> 32);
+        int j = (int) ij;
+        face = S2Helper.face(id);
+        uMin = S2Helper.ijToUV(i, size);
+        uMax = S2Helper.ijToUV(i + size, size);
+        vMin = S2Helper.ijToUV(j, size);
+        vMax = S2Helper.ijToUV(j + size, size);
+
+        for (int k = 0; k < 4; k++) {
+            double u = ((k >> 1) ^ (k & 1)) == 0 ? uMin : uMax;
+            double v = (k >> 1) == 0 ? vMin : vMax;
+            double x = S2Helper.faceUvToX(face, u, v);
+            double y = S2Helper.faceUvToY(face, u, v);
+            double z = S2Helper.faceUvToZ(face, u, v);
+            double norm = Math.sqrt(x * x + y * y + z * z);
+            if (norm != 0) {
+                norm = 1 / norm;
+            }
+            x *= norm;
+            y *= norm;
+            z *= norm;
+            vertices[3 * k] = x;
+            vertices[3 * k + 1] = y;
+            vertices[3 * k + 2] = z;
+            double dx = axisX - x;
+            double dy = axisY - y;
+            double dz = axisZ - z;
+            if (Math.min(4.0, dx * dx + dy * dy + dz * dz) <= radius2) return true;
+        }
+        return intersects();
+    }
+
+    // S2Cap.intersects(S2Cell, S2Point[]) for a cell none of whose vertices is in the cap
+    private boolean intersects() {
+        if (radius2 >= 2 || radius2 < 0) return false;
+        if (cellContainsAxis()) return true;
+
+        double sin2Angle = radius2 * (1 - 0.25 * radius2);
+        for (int k = 0; k < 4; k++) {
+            double x;
+            double y;
+            double z;
+            switch (k) {
+                case 0: x = vNormX(vMin); y = vNormY(vMin); z = vNormZ(vMin); break;
+                case 1: x = uNormX(uMax); y = uNormY(uMax); z = uNormZ(uMax); break;
+                case 2: x = -vNormX(vMax); y = -vNormY(vMax); z = -vNormZ(vMax); break;
+                default: x = -uNormX(uMin); y = -uNormY(uMin); z = -uNormZ(uMin); break;
+            }
+            double dot = axisX * x + axisY * y + axisZ * z;
+            if (dot > 0) continue;
+            if (dot * dot > sin2Angle * (x * x + y * y + z * z)) return false;
+
+            // direction = edge x axis
+            double dirX = y * axisZ - z * axisY;
+            double dirY = z * axisX - x * axisZ;
+            double dirZ = x * axisY - y * axisX;
+            int a = 3 * k;
+            int b = 3 * ((k + 1) & 3);
+            if (dirX * vertices[a] + dirY * vertices[a + 1] + dirZ * vertices[a + 2] < 0
+                    && dirX * vertices[b] + dirY * vertices[b + 1] + dirZ * vertices[b + 2] > 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean cellContainsAxis() {
+        double faceComponent = face % 3 == 0 ? axisX : face % 3 == 1 ? axisY : axisZ;
+        if (face < 3 ? faceComponent <= 0 : faceComponent >= 0) return false;
+        double u = S2Helper.xyzToU(face, axisX, axisY, axisZ);
+        double v = S2Helper.xyzToV(face, axisX, axisY, axisZ);
+        return u >= uMin && u <= uMax && v >= vMin && v <= vMax;
+    }
+
+    // S2Projections.getUNorm and getVNorm of the current face
+
+    private double uNormX(double u) {
+        switch (face) {
+            case 0: return u;
+            case 1: case 2: return 1;
+            case 3: return -u;
+            default: return 0;
+        }
+    }
+
+    private double uNormY(double u) {
+        switch (face) {
+            case 0: case 5: return -1;
+            case 1: return u;
+            case 4: return -u;
+            default: return 0;
+        }
+    }
+
+    private double uNormZ(double u) {
+        switch (face) {
+            case 2: return u;
+            case 3: case 4: return 1;
+            case 5: return -u;
+            default: return 0;
+        }
+    }
+
+    private double vNormX(double v) {
+        switch (face) {
+            case 0: return -v;
+            case 3: return v;
+            case 4: case 5: return 1;
+            default: return 0;
+        }
+    }
+
+    private double vNormY(double v) {
+        switch (face) {
+            case 1: return -v;
+            case 2: case 3: return -1;
+            case 4: return v;
+            default: return 0;
+        }
+    }
+
+    private double vNormZ(double v) {
+        switch (face) {
+            case 0: case 1: return 1;
+            case 2: return -v;
+            case 5: return v;
+            default: return 0;
+        }
+    }
+}
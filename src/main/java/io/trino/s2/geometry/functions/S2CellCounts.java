@@ -0,0 +1,141 @@
+package io.trino.s2.geometry.functions;
+
+import com.google.common.geometry.S2CellId;
+import io.airlift.slice.DynamicSliceOutput;
+import io.airlift.slice.Slice;
+import io.airlift.slice.SliceInput;
+
+import java.util.Arrays;
+
+/**
+ * Count per cell id in a primitive open addressing hash map with linear probing.
+ *
+ * 0 is never a valid cell id, so it marks the empty slots. The table doubles when
+ * it is more than half full.
+ */
+public final class S2CellCounts {
+
+    private static final int INSTANCE_SIZE = 32;
+    private static final int INITIAL_CAPACITY = 16;
+
+    private long[] ids = new long[INITIAL_CAPACITY];
+    private long[] counts = new long[INITIAL_CAPACITY];
+    private int mask = INITIAL_CAPACITY - 1;
+    private int size;
+
+    public int size() {
+        return size;
+    }
+
+    public void add(long id, long count) {
+        int slot = slot(id);
+        if (ids[slot] == 0) {
+            ids[slot] = id;
+            size++;
+            counts[slot] = count;
+            if (size * 2 > ids.length) {
+                rehash();
+            }
+        }
+        else {
+            counts[slot] += count;
+        }
+    }
+
+    public long get(long id) {
+        int slot = slot(id);
+        return ids[slot] == 0 ? 0 : counts[slot];
+    }
+
+    public void addAll(S2CellCounts other) {
+        for (int i = 0; i < other.ids.length; i++) {
+            if (other.ids[i] != 0) {
+                add(other.ids[i], other.counts[i]);
+            }
+        }
+    }
+
+    /**
+     * Writes the cells ordered by level and then by id into sortedIds and sortedCounts and returns their count.
+     */
+    public int sorted(long[] sortedIds, long[] sortedCounts) {
+        int[] levelStarts = new int[S2CellId.MAX_LEVEL + 2];
+        for (int i = 0; i < ids.length; i++) {
+            if (ids[i] != 0) {
+                levelStarts[S2Helper.level(ids[i]) + 1]++;
+            }
+        }
+        for (int level = 1; level < levelStarts.length; level++) {
+            levelStarts[level] += levelStarts[level - 1];
+        }
+        int[] next = Arrays.copyOf(levelStarts, levelStarts.length);
+        // flipping the sign bit makes the signed sort an unsigned id sort
+        for (int i = 0; i < ids.length; i++) {
+            if (ids[i] != 0) {
+                sortedIds[next[S2Helper.level(ids[i])]++] = ids[i] ^ Long.MIN_VALUE;
+            }
+        }
+        for (int level = 0; level <= S2CellId.MAX_LEVEL; level++) {
+            Arrays.sort(sortedIds, levelStarts[level], levelStarts[level + 1]);
+        }
+        for (int i = 0; i < size; i++) {
+            sortedIds[i] ^= Long.MIN_VALUE;
+            sortedCounts[i] = get(sortedIds[i]);
+        }
+        return size;
+    }
+
+    public long getEstimatedSize() {
+        return INSTANCE_SIZE + 32 + (long) ids.length * (Long.BYTES + Long.BYTES);
+    }
+
+    private int slot(long id) {
+        int slot = hash(id) & mask;
+        while (ids[slot] != 0 && ids[slot] != id) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private static int hash(long id) {
+        long h = id * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    private void rehash() {
+        long[] oldIds = ids;
+        long[] oldCounts = counts;
+        ids = new long[oldIds.length * 2];
+        counts = new long[oldCounts.length * 2];
+        mask = ids.length - 1;
+        for (int i = 0; i < oldIds.length; i++) {
+            if (oldIds[i] != 0) {
+                int slot = slot(oldIds[i]);
+                ids[slot] = oldIds[i];
+                counts[slot] = oldCounts[i];
+            }
+        }
+    }
+
+    public Slice serialize() {
+        DynamicSliceOutput output = new DynamicSliceOutput(4 + size * (Long.BYTES + Long.BYTES));
+        output.writeInt(size);
+        for (int i = 0; i < ids.length; i++) {
+            if (ids[i] != 0) {
+                output.writeLong(ids[i]);
+                output.writeLong(counts[i]);
+            }
+        }
+        return output.slice();
+    }
+
+    public static S2CellCounts deserialize(Slice serialized) {
+        SliceInput input = serialized.getInput();
+        S2CellCounts counts = new S2CellCounts();
+        int count = input.readInt();
+        for (int i = 0; i < count; i++) {
+            counts.add(input.readLong(), input.readLong());
+        }
+        return counts;
+    }
+}
@@ -0,0 +1,15 @@
+package io.trino.s2.geometry.functions;
+
+import io.trino.spi.function.AccumulatorState;
+import io.trino.spi.function.AccumulatorStateMetadata;
+
+@AccumulatorStateMetadata(stateFactoryClass = S2CellCountsStateFactory.class, stateSerializerClass = S2CellCountsStateSerializer.class)
+public interface S2CellCountsState
+        extends AccumulatorState
+{
+    S2CellCounts getCounts();
+
+    void setCounts(S2CellCounts counts);
+
+    void addMemoryUsage(long memory);
+}
@@ -0,0 +1,101 @@
+package io.trino.s2.geometry.functions;
+
+import io.trino.spi.function.AccumulatorStateFactory;
+import io.trino.spi.function.GroupedAccumulatorState;
+
+import java.util.Arrays;
+
+public class S2CellCountsStateFactory
+        implements AccumulatorStateFactory<S2CellCountsState>
+{
+    @Override
+    public S2CellCountsState createSingleState()
+    {
+        return new SingleS2CellCountsState();
+    }
+
+    @Override
+    public S2CellCountsState createGroupedState()
+    {
+        return new GroupedS2CellCountsState();
+    }
+
+    public static class GroupedS2CellCountsState
+            implements GroupedAccumulatorState, S2CellCountsState
+    {
+        private static final int INSTANCE_SIZE = 40;
+
+        private S2CellCounts[] cellCounts = new S2CellCounts[0];
+        private int groupId;
+        private long memoryUsage;
+
+        @Override
+        public void setGroupId(int groupId)
+        {
+            this.groupId = groupId;
+        }
+
+        @Override
+        public void ensureCapacity(int size)
+        {
+            if (cellCounts.length < size) {
+                cellCounts = Arrays.copyOf(cellCounts, Math.max(size, cellCounts.length * 2));
+            }
+        }
+
+        @Override
+        public S2CellCounts getCounts()
+        {
+            return cellCounts[groupId];
+        }
+
+        @Override
+        public void setCounts(S2CellCounts counts)
+        {
+            cellCounts[groupId] = counts;
+        }
+
+        @Override
+        public void addMemoryUsage(long memory)
+        {
+            memoryUsage += memory;
+        }
+
+        @Override
+        public long getEstimatedSize()
+        {
+            return INSTANCE_SIZE + 16 + (long) cellCounts.length * 8 + memoryUsage;
+        }
+    }
+
+    public static class SingleS2CellCountsState
+            implements S2CellCountsState
+    {
+        private static final int INSTANCE_SIZE = 16;
+
+        private S2CellCounts counts;
+
+        @Override
+        public S2CellCounts getCounts()
+        {
+            return counts;
+        }
+
+        @Override
+        public void setCounts(S2CellCounts counts)
+        {
+            this.counts = counts;
+        }
+
+        @Override
+        public void addMemoryUsage(long memory)
+        {
+        }
+
+        @Override
+        public long getEstimatedSize()
+        {
+            return INSTANCE_SIZE + (counts == null ? 0 : counts.getEstimatedSize());
+        }
+    }
+}
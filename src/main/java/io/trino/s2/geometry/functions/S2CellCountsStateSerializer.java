@@ -0,0 +1,35 @@
+package io.trino.s2.geometry.functions;
+
+import io.trino.spi.block.Block;
+import io.trino.spi.block.BlockBuilder;
+import io.trino.spi.function.AccumulatorStateSerializer;
+import io.trino.spi.type.Type;
+
+import static io.trino.spi.type.VarbinaryType.VARBINARY;
+
+public class S2CellCountsStateSerializer
+        implements AccumulatorStateSerializer<S2CellCountsState>
+{
+    @Override
+    public Type getSerializedType()
+    {
+        return VARBINARY;
+    }
+
+    @Override
+    public void serialize(S2CellCountsState state, BlockBuilder out)
+    {
+        if (state.getCounts() == null) {
+            out.appendNull();
+        }
+        else {
+            VARBINARY.writeSlice(out, state.getCounts().serialize());
+        }
+    }
+
+    @Override
+    public void deserialize(Block block, int index, S2CellCountsState state)
+    {
+        state.setCounts(S2CellCounts.deserialize(VARBINARY.getSlice(block, index)));
+    }
+}
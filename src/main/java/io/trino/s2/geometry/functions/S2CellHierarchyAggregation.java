@@ -0,0 +1,104 @@
+package io.trino.s2.geometry.functions;
+
+import io.trino.spi.TrinoException;
+import io.trino.spi.block.Block;
+import io.trino.spi.block.BlockBuilder;
+import io.trino.spi.block.RowBlockBuilder;
+import io.trino.spi.function.AggregationFunction;
+import io.trino.spi.function.AggregationState;
+import io.trino.spi.function.CombineFunction;
+import io.trino.spi.function.Description;
+import io.trino.spi.function.InputFunction;
+import io.trino.spi.function.OutputFunction;
+import io.trino.spi.function.SqlType;
+import io.trino.spi.type.ArrayType;
+import io.trino.spi.type.RowType;
+import io.trino.spi.type.StandardTypes;
+
+import java.util.List;
+
+import static io.trino.spi.StandardErrorCode.INVALID_FUNCTION_ARGUMENT;
+import static io.trino.spi.type.BigintType.BIGINT;
+import static io.trino.spi.type.RowType.field;
+
+@AggregationFunction("s2_cell_hierarchy_agg")
+@Description("Returns the number of latitude,longitude degrees points in each cell id from min_level to max_level, ordered by level and cell id")
+public final class S2CellHierarchyAggregation
+{
+    static final RowType ID_COUNT = RowType.from(List.of(field("cell", BIGINT), field("count", BIGINT)));
+
+    private static final ArrayType ID_COUNT_ARRAY = new ArrayType(ID_COUNT);
+
+    private S2CellHierarchyAggregation() {}
+
+    @InputFunction
+    public static void input(
+            @AggregationState S2CellCountsState state,
+            @SqlType(StandardTypes.DOUBLE) double lat,
+            @SqlType(StandardTypes.DOUBLE) double lon,
+            @SqlType(StandardTypes.INTEGER) long min_level,
+            @SqlType(StandardTypes.INTEGER) long max_level)
+    {
+        if (min_level<0 || max_level>30 || min_level>max_level) {
+            throw new TrinoException(INVALID_FUNCTION_ARGUMENT, "Levels must satisfy 0 <= min_level <= max_level <= 30");
+        }
+        S2CellCounts counts = state.getCounts();
+        if (counts == null) {
+            counts = new S2CellCounts();
+            state.setCounts(counts);
+            state.addMemoryUsage(counts.getEstimatedSize());
+        }
+        long size = counts.getEstimatedSize();
+        long leaf = S2Helper.cellId(lat, lon, 30);
+        for (int level = (int) min_level; level <= max_level; level++) {
+            counts.add(S2Helper.parent(leaf, level), 1);
+        }
+        state.addMemoryUsage(counts.getEstimatedSize() - size);
+    }
+
+    @CombineFunction
+    public static void combine(@AggregationState S2CellCountsState state, @AggregationState S2CellCountsState otherState)
+    {
+        S2CellCounts other = otherState.getCounts();
+        if (other == null) {
+            return;
+        }
+        S2CellCounts counts = state.getCounts();
+        if (counts == null) {
+            state.setCounts(other);
+            state.addMemoryUsage(other.getEstimatedSize());
+            return;
+        }
+        long size = counts.getEstimatedSize();
+        counts.addAll(other);
+        state.addMemoryUsage(counts.getEstimatedSize() - size);
+    }
+
+    @OutputFunction("array(row(cell bigint, count bigint))")
+    public static void output(@AggregationState S2CellCountsState state, BlockBuilder out)
+    {
+        S2CellCounts counts = state.getCounts();
+        if (counts == null) {
+            out.appendNull();
+            return;
+        }
+        long[] ids = new long[counts.size()];
+        long[] cellCounts = new long[counts.size()];
+        int count = counts.sorted(ids, cellCounts);
+        ID_COUNT_ARRAY.writeObject(out, rows(ids, cellCounts, count));
+    }
+
+    private static Block rows(long[] ids, long[] counts, int count)
+    {
+        RowBlockBuilder rows = (RowBlockBuilder) ID_COUNT.createBlockBuilder(null, count);
+        for (int i = 0; i < count; i++) {
+            long id = ids[i];
+            long cellCount = counts[i];
+            rows.buildEntry(fields -> {
+                BIGINT.writeLong(fields.get(0), id);
+                BIGINT.writeLong(fields.get(1), cellCount);
+            });
+        }
+        return rows.build();
+    }
+}
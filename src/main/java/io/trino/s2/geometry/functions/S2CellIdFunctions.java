@@ -0,0 +1,490 @@
+package io.trino.s2.geometry.functions;
+
+import com.google.common.geometry.S2CellId;
+import com.google.common.geometry.S2CellUnion;
+import com.google.common.geometry.S2LatLng;
+import io.airlift.slice.Slice;
+import io.trino.spi.block.Block;
+import io.trino.spi.block.BlockBuilder;
+import io.trino.spi.function.Description;
+import io.trino.spi.function.ScalarFunction;
+import io.trino.spi.function.SqlNullable;
+import io.trino.spi.function.SqlType;
+import io.trino.spi.type.StandardTypes;
+
+import java.util.List;
+
+import static io.trino.spi.type.BigintType.BIGINT;
+import static io.trino.spi.type.DoubleType.DOUBLE;
+import static java.lang.Math.toIntExact;
+
+/**
+ * BIGINT cell id counterparts of {@link S2GeometryFunctions}, working on the raw 64 bit id
+ * instead of the cell token string.
+ */
+public class S2CellIdFunctions {
+
+    private S2CellIdFunctions() {}
+
+    @ScalarFunction("s2_cell_id")
+    @Description("Returns cell id for latitude,longitude degrees and level")
+    @SqlType(StandardTypes.BIGINT)
+    @SqlNullable
+    public static Long s2CellId(
+            @SqlType(StandardTypes.DOUBLE) double lat,
+            @SqlType(StandardTypes.DOUBLE) double lon,
+            @SqlType(StandardTypes.INTEGER) long level)
+    {
+        if (level<0 || level>30) return null;
+        return S2Helper.cellId(lat, lon, toIntExact(level));
+    }
+
+    @ScalarFunction("s2_cell_id")
+    @Description("Returns cell id for latitude,longitude degrees in level 30")
+    @SqlType(StandardTypes.BIGINT)
+    @SqlNullable
+    public static Long s2CellId(
+            @SqlType(StandardTypes.DOUBLE) double lat,
+            @SqlType(StandardTypes.DOUBLE) double lon)
+    {
+        return s2CellId(lat,lon,30);
+    }
+
+    @ScalarFunction("s2_cell_id_hierarchy")
+    @Description("Returns cell ids for latitude,longitude degrees from min_level to max_level")
+    @SqlType("array(bigint)")
+    @SqlNullable
+    public static Block s2CellIdHierarchy(
+            @SqlType(StandardTypes.DOUBLE) double lat,
+            @SqlType(StandardTypes.DOUBLE) double lon,
+            @SqlType(StandardTypes.INTEGER) long min_level,
+            @SqlType(StandardTypes.INTEGER) long max_level)
+    {
+        if (min_level<0 || max_level>30 || min_level>max_level) return null;
+
+        S2CellWriter output = S2CellWriter.ids(toIntExact(max_level - min_level + 1));
+        S2Helper.writeHierarchy(lat, lon, toIntExact(min_level), toIntExact(max_level), output);
+        return output.build();
+    }
+
+    @ScalarFunction("s2_cell_ids")
+    @Description("Returns cell ids for arrays of latitude,longitude degrees and level")
+    @SqlType("array(bigint)")
+    @SqlNullable
+    public static Block s2CellIds(
+            @SqlType("array(double)") Block lats,
+            @SqlType("array(double)") Block lons,
+            @SqlType(StandardTypes.INTEGER) long level)
+    {
+        if (level<0 || level>30) return null;
+
+        BlockBuilder blockBuilder = BIGINT.createBlockBuilder(null, lats.getPositionCount());
+        S2Helper.writeCellIds(lats, lons, toIntExact(level), blockBuilder);
+        return blockBuilder.build();
+    }
+
+    @ScalarFunction("s2_trajectory_cell_ids")
+    @Description("Returns the cell ids a track of latitude,longitude degrees passes through at a level, in order and without repeats of the previous cell")
+    @SqlType("array(bigint)")
+    @SqlNullable
+    public static Block s2TrajectoryCellIds(
+            @SqlType("array(double)") Block lats,
+            @SqlType("array(double)") Block lons,
+            @SqlType(StandardTypes.INTEGER) long level)
+    {
+        if (level<0 || level>30) return null;
+
+        S2CellWriter output = S2CellWriter.ids(lats.getPositionCount());
+        S2Helper.writeTrajectory(lats, lons, toIntExact(level), output);
+        return output.build();
+    }
+
+    @ScalarFunction("s2_token_to_id")
+    @Description("Returns cell id of cell token")
+    @SqlType(StandardTypes.BIGINT)
+    public static long s2TokenToId(@SqlType(StandardTypes.VARCHAR) Slice celltoken)
+    {
+        return S2Helper.tokenToId(celltoken);
+    }
+
+    @ScalarFunction("s2_id_to_token")
+    @Description("Returns cell token of cell id")
+    @SqlType(StandardTypes.VARCHAR)
+    public static Slice s2IdToToken(@SqlType(StandardTypes.BIGINT) long cellid)
+    {
+        return S2Helper.idToToken(cellid);
+    }
+
+    @ScalarFunction("s2_parent")
+    @Description("Returns cell id parent")
+    @SqlType(StandardTypes.BIGINT)
+    @SqlNullable
+    public static Long s2Parent(@SqlType(StandardTypes.BIGINT) long cellid)
+    {
+        if (!S2Helper.isValid(cellid) || S2Helper.level(cellid)==0) return null;
+        return S2Helper.parent(cellid);
+    }
+
+    @ScalarFunction("s2_cell_range_min")
+    @Description("Returns the smallest leaf cell id inside a cell id")
+    @SqlType(StandardTypes.BIGINT)
+    @SqlNullable
+    public static Long s2CellRangeMin(@SqlType(StandardTypes.BIGINT) long cellid)
+    {
+        if (!S2Helper.isValid(cellid)) return null;
+        return S2Helper.rangeMin(cellid);
+    }
+
+    @ScalarFunction("s2_cell_range_max")
+    @Description("Returns the largest leaf cell id inside a cell id")
+    @SqlType(StandardTypes.BIGINT)
+    @SqlNullable
+    public static Long s2CellRangeMax(@SqlType(StandardTypes.BIGINT) long cellid)
+    {
+        if (!S2Helper.isValid(cellid)) return null;
+        return S2Helper.rangeMax(cellid);
+    }
+
+    @ScalarFunction("s2_level")
+    @Description("Returns the level of cell id")
+    @SqlType(StandardTypes.INTEGER)
+    public static long s2Level(@SqlType(StandardTypes.BIGINT) long cellid)
+    {
+        return S2Helper.isValid(cellid) ? S2Helper.level(cellid) : -1L;
+    }
+
+    @ScalarFunction("s2_distance")
+    @Description("Returns the distance in meter from cell id to point")
+    @SqlType(StandardTypes.DOUBLE)
+    public static double s2Distance(
+            @SqlType(StandardTypes.BIGINT) long cellid,
+            @SqlType(StandardTypes.DOUBLE) double lat,
+            @SqlType(StandardTypes.DOUBLE) double lon)
+    {
+        return new S2CellId(cellid).toLatLng().getDistance(S2LatLng.fromDegrees(lat,lon)).radians() * 6371010.0;
+    }
+
+    @ScalarFunction("s2_nearest")
+    @Description("Returns the k cell ids nearest to latitude,longitude degrees with their distance in meter, nearest first")
+    @SqlType("array(row(cell bigint, distance double))")
+    @SqlNullable
+    public static Block s2Nearest(
+            @SqlType(StandardTypes.DOUBLE) double lat,
+            @SqlType(StandardTypes.DOUBLE) double lon,
+            @SqlType("array(bigint)") Block cellids,
+            @SqlType(StandardTypes.INTEGER) long k)
+    {
+        if (k<1) return null;
+        return S2NearestCells.fromIdBlock(cellids).nearestIds(lat, lon, S2NearestCells.checkK(k));
+    }
+
+    @ScalarFunction("s2_centroid")
+    @Description("Returns the lat,lon point of cell centre")
+    @SqlType("array(double)")
+    public static Block s2Centroid(@SqlType(StandardTypes.BIGINT) long cellid)
+    {
+        S2LatLng latlng = new S2CellId(cellid).toLatLng();
+        BlockBuilder blockBuilder = DOUBLE.createBlockBuilder(null,2);
+        DOUBLE.writeDouble(blockBuilder, latlng.latDegrees());
+        DOUBLE.writeDouble(blockBuilder, latlng.lngDegrees());
+        return blockBuilder.build();
+    }
+
+    @ScalarFunction("s2_neighbours")
+    @Description("Returns cell id neighbours in a level")
+    @SqlType("array(bigint)")
+    @SqlNullable
+    public static Block s2CellNeighbours(
+            @SqlType(StandardTypes.BIGINT) long cellid,
+            @SqlType(StandardTypes.INTEGER) long level)
+    {
+        if (level<0 || level>30) return null;
+        if (!S2Helper.isValid(cellid)) return null;
+
+        S2CellWriter output = S2CellWriter.ids(S2Helper.allNeighborsCount(cellid, toIntExact(level)));
+        S2Helper.writeAllNeighbors(cellid, toIntExact(level), output);
+        return output.build();
+    }
+
+    @ScalarFunction("s2_neighbors")
+    @Description("Returns cell id neighbors in a level")
+    @SqlType("array(bigint)")
+    @SqlNullable
+    public static Block s2CellNeighbors(
+            @SqlType(StandardTypes.BIGINT) long cellid,
+            @SqlType(StandardTypes.INTEGER) long level)
+    {
+        return s2CellNeighbours(cellid, level);
+    }
+
+    @ScalarFunction("s2_childs")
+    @Description("Returns cell id children")
+    @SqlType("array(bigint)")
+    @SqlNullable
+    public static Block s2CellChilds(@SqlType(StandardTypes.BIGINT) long cellid)
+    {
+        if (!S2Helper.isValid(cellid)) return null;
+
+        S2CellWriter output = S2CellWriter.ids(4);
+        S2Helper.writeChildren(cellid, output);
+        return output.build();
+    }
+
+    @ScalarFunction("s2_radius_cover")
+    @Description("Returns cell ids in a meter radius for a specific level")
+    @SqlType("array(bigint)")
+    @SqlNullable
+    public static Block s2CellCover(
+            @SqlType(StandardTypes.BIGINT) long cellid,
+            @SqlType(StandardTypes.DOUBLE) double radius,
+            @SqlType(StandardTypes.INTEGER) long level)
+    {
+        return s2CellCover(cellid, radius, level, S2Helper.DEFAULT_MAX_COVER_CELLS);
+    }
+
+    @ScalarFunction("s2_radius_cover")
+    @Description("Returns cell ids in a meter radius for a specific level, failing above max_cells cells")
+    @SqlType("array(bigint)")
+    @SqlNullable
+    public static Block s2CellCover(
+            @SqlType(StandardTypes.BIGINT) long cellid,
+            @SqlType(StandardTypes.DOUBLE) double radius,
+            @SqlType(StandardTypes.INTEGER) long level,
+            @SqlType(StandardTypes.INTEGER) long max_cells)
+    {
+        if (level<0 || level>30) return null;
+        if (max_cells<1) return null;
+        if (!S2Helper.isValid(cellid)) return null;
+
+        S2CellWriter output = S2CellWriter.ids(16);
+        S2CapCoverer.cover(S2Helper.radiusCap(cellid, radius), toIntExact(level), (int) Math.min(max_cells, Integer.MAX_VALUE), output);
+        return output.build();
+    }
+
+    @ScalarFunction("s2_polygon_cover_ids")
+    @Description("Returns cell ids cover of wkt polygon")
+    @SqlType("array(bigint)")
+    @SqlNullable
+    public static Block s2PolygonCoverIds(
+            @SqlType(StandardTypes.VARCHAR) Slice wktPolygon,
+            @SqlType(StandardTypes.INTEGER) long min_level,
+            @SqlType(StandardTypes.INTEGER) long max_level)
+    {
+        if (min_level<0 || min_level>30) return null;
+        if (max_level<0 || max_level>30) return null;
+
+        S2CellUnion cover = S2PolygonCache.cover(wktPolygon, toIntExact(min_level), toIntExact(max_level));
+        if (cover==null) return null;
+        return cellIdsArrayBlock(cover.cellIds());
+    }
+
+    @ScalarFunction("s2_polygon_cover_ids")
+    @Description("Returns cell ids cover of wkt polygon")
+    @SqlType("array(bigint)")
+    @SqlNullable
+    public static Block s2PolygonCoverIds(
+            @SqlType(StandardTypes.VARCHAR) Slice wktPolygon,
+            @SqlType(StandardTypes.INTEGER) long level)
+    {
+        return s2PolygonCoverIds(wktPolygon,level,level);
+    }
+
+    @ScalarFunction("s2_polygon_cover_ids")
+    @Description("Returns cell ids cover of wkt polygon with at most max_cells cells when levels allow")
+    @SqlType("array(bigint)")
+    @SqlNullable
+    public static Block s2PolygonCoverIds(
+            @SqlType(StandardTypes.VARCHAR) Slice wktPolygon,
+            @SqlType(StandardTypes.INTEGER) long min_level,
+            @SqlType(StandardTypes.INTEGER) long max_level,
+            @SqlType(StandardTypes.INTEGER) long max_cells)
+    {
+        return s2PolygonCoverIds(wktPolygon, min_level, max_level, max_cells, 1);
+    }
+
+    @ScalarFunction("s2_polygon_cover_ids")
+    @Description("Returns cell ids cover of wkt polygon with at most max_cells cells when levels allow, using levels min_level + k * level_mod")
+    @SqlType("array(bigint)")
+    @SqlNullable
+    public static Block s2PolygonCoverIds(
+            @SqlType(StandardTypes.VARCHAR) Slice wktPolygon,
+            @SqlType(StandardTypes.INTEGER) long min_level,
+            @SqlType(StandardTypes.INTEGER) long max_level,
+            @SqlType(StandardTypes.INTEGER) long max_cells,
+            @SqlType(StandardTypes.INTEGER) long level_mod)
+    {
+        if (min_level<0 || min_level>30) return null;
+        if (max_level<0 || max_level>30) return null;
+        if (max_cells<1 || level_mod<1 || level_mod>3) return null;
+
+        S2CellUnion cover = S2PolygonCache.cover(wktPolygon, toIntExact(min_level), toIntExact(max_level), (int) Math.min(max_cells, Integer.MAX_VALUE), toIntExact(level_mod));
+        if (cover==null) return null;
+        return cellIdsArrayBlock(cover.cellIds());
+    }
+
+    @ScalarFunction("s2_line_cover_ids")
+    @Description("Returns cell ids at a level a wkt linestring passes through")
+    @SqlType("array(bigint)")
+    @SqlNullable
+    public static Block s2LineCoverIds(
+            @SqlType(StandardTypes.VARCHAR) Slice wktLineString,
+            @SqlType(StandardTypes.INTEGER) long level)
+    {
+        if (level<0 || level>30) return null;
+
+        S2CellUnion cover = S2Helper.lineCover(S2Helper.parseWktLineString(wktLineString), toIntExact(level));
+        if (cover==null) return null;
+        return cellIdsArrayBlock(cover.cellIds());
+    }
+
+    @ScalarFunction("s2_polygon_interior_cover_ids")
+    @Description("Returns cell ids entirely inside a wkt polygon at a level")
+    @SqlType("array(bigint)")
+    @SqlNullable
+    public static Block s2PolygonInteriorCoverIds(
+            @SqlType(StandardTypes.VARCHAR) Slice wktPolygon,
+            @SqlType(StandardTypes.INTEGER) long level)
+    {
+        return s2PolygonInteriorCoverIds(wktPolygon, level, level, Integer.MAX_VALUE, 1);
+    }
+
+    @ScalarFunction("s2_polygon_interior_cover_ids")
+    @Description("Returns cell ids entirely inside a wkt polygon, at most max_cells cells")
+    @SqlType("array(bigint)")
+    @SqlNullable
+    public static Block s2PolygonInteriorCoverIds(
+            @SqlType(StandardTypes.VARCHAR) Slice wktPolygon,
+            @SqlType(StandardTypes.INTEGER) long min_level,
+            @SqlType(StandardTypes.INTEGER) long max_level,
+            @SqlType(StandardTypes.INTEGER) long max_cells)
+    {
+        return s2PolygonInteriorCoverIds(wktPolygon, min_level, max_level, max_cells, 1);
+    }
+
+    @ScalarFunction("s2_polygon_interior_cover_ids")
+    @Description("Returns cell ids entirely inside a wkt polygon, at most max_cells cells, using levels min_level + k * level_mod")
+    @SqlType("array(bigint)")
+    @SqlNullable
+    public static Block s2PolygonInteriorCoverIds(
+            @SqlType(StandardTypes.VARCHAR) Slice wktPolygon,
+            @SqlType(StandardTypes.INTEGER) long min_level,
+            @SqlType(StandardTypes.INTEGER) long max_level,
+            @SqlType(StandardTypes.INTEGER) long max_cells,
+            @SqlType(StandardTypes.INTEGER) long level_mod)
+    {
+        if (min_level<0 || min_level>30) return null;
+        if (max_level<0 || max_level>30) return null;
+        if (max_cells<1 || level_mod<1 || level_mod>3) return null;
+
+        S2CellUnion cover = S2PolygonCache.interiorCover(wktPolygon, toIntExact(min_level), toIntExact(max_level), (int) Math.min(max_cells, Integer.MAX_VALUE), toIntExact(level_mod));
+        if (cover==null) return null;
+        return cellIdsArrayBlock(cover.cellIds());
+    }
+
+    @ScalarFunction("s2_union_cover_ids")
+    @Description("Returns the normalized union of the cell id covers of wkt polygons for a specific level")
+    @SqlType("array(bigint)")
+    @SqlNullable
+    public static Block s2UnionCoverIds(
+            @SqlType("array(varchar)") Block wktPolygons,
+            @SqlType(StandardTypes.INTEGER) long level)
+    {
+        if (level<0 || level>30) return null;
+
+        S2CellIdUnion union = S2PolygonCache.unionCover(wktPolygons, toIntExact(level));
+        S2CellWriter output = S2CellWriter.ids(union.size());
+        for (int i = 0; i < union.size(); i++) {
+            output.write(union.cellId(i));
+        }
+        return output.build();
+    }
+
+    @ScalarFunction("s2_within")
+    @Description("Returns TRUE if a cell id is in coverage of a wkt polygon")
+    @SqlType(StandardTypes.BOOLEAN)
+    @SqlNullable
+    public static Boolean s2Within(
+            @SqlType(StandardTypes.BIGINT) long cellid,
+            @SqlType(StandardTypes.VARCHAR) Slice wktPolygon,
+            @SqlType(StandardTypes.INTEGER) long level)
+    {
+        if (level<0 || level>30) return null;
+
+        S2CellUnion cover = S2PolygonCache.cover(wktPolygon, toIntExact(level));
+        if (cover==null) return false;
+        return cover.contains(new S2CellId(cellid));
+    }
+
+    @ScalarFunction("s2_contains")
+    @Description("Returns TRUE if coverage of a wkt polygon contains a cell id")
+    @SqlType(StandardTypes.BOOLEAN)
+    @SqlNullable
+    public static Boolean s2Contains(
+            @SqlType(StandardTypes.VARCHAR) Slice wktPolygon,
+            @SqlType(StandardTypes.BIGINT) long cellid,
+            @SqlType(StandardTypes.INTEGER) long level)
+    {
+        return s2Within(cellid, wktPolygon, level);
+    }
+
+    @ScalarFunction("s2_polygon_contains_point")
+    @Description("Returns TRUE if a wkt polygon contains the center of a cell id")
+    @SqlType(StandardTypes.BOOLEAN)
+    public static boolean s2PolygonContainsPoint(
+            @SqlType(StandardTypes.VARCHAR) Slice wktPolygon,
+            @SqlType(StandardTypes.BIGINT) long cellid)
+    {
+        return S2PolygonCache.prepared(wktPolygon).containsCenter(cellid);
+    }
+
+    @ScalarFunction("s2_within")
+    @Description("Returns TRUE if a cell id is in coverage of cell ids list")
+    @SqlType(StandardTypes.BOOLEAN)
+    public static boolean s2Within(
+            @SqlType(StandardTypes.BIGINT) long cellid,
+            @SqlType("array(bigint)") Block cellids)
+    {
+        return S2CellRanges.fromIdBlock(cellids).contains(cellid);
+    }
+
+    @ScalarFunction("s2_contains")
+    @Description("Returns TRUE if coverage of cell ids list contains a cell id")
+    @SqlType(StandardTypes.BOOLEAN)
+    public static boolean s2Contains(
+            @SqlType("array(bigint)") Block cellids,
+            @SqlType(StandardTypes.BIGINT) long cellid)
+    {
+        return s2Within(cellid, cellids);
+    }
+
+    @ScalarFunction("s2_within")
+    @Description("Returns TRUE if a cell id A is in coverage of cell id B")
+    @SqlType(StandardTypes.BOOLEAN)
+    public static boolean s2Within(
+            @SqlType(StandardTypes.BIGINT) long cellidA,
+            @SqlType(StandardTypes.BIGINT) long cellidB)
+    {
+        return S2Helper.contains(cellidB, cellidA);
+    }
+
+    @ScalarFunction("s2_contains")
+    @Description("Returns TRUE if coverage of cell id A contains cell id B")
+    @SqlType(StandardTypes.BOOLEAN)
+    public static boolean s2Contains(
+            @SqlType(StandardTypes.BIGINT) long cellidA,
+            @SqlType(StandardTypes.BIGINT) long cellidB)
+    {
+        return S2Helper.contains(cellidA, cellidB);
+    }
+
+    public static Block cellIdsArrayBlock(List<S2CellId> cells) {
+        long start = S2Metrics.CELLS_ARRAY.start();
+        BlockBuilder blockBuilder = BIGINT.createBlockBuilder(null, cells.size());
+        for (S2CellId cell: cells)
+            BIGINT.writeLong(blockBuilder, cell.id());
+        Block block = blockBuilder.build();
+        S2Metrics.CELLS_ARRAY.end(start);
+        S2Metrics.cellsArrayCells(cells.size());
+        return block;
+    }
+}
@@ -0,0 +1,123 @@
+package io.trino.s2.geometry.functions;
+
+import io.airlift.slice.DynamicSliceOutput;
+import io.airlift.slice.Slice;
+import io.airlift.slice.SliceInput;
+import io.trino.spi.TrinoException;
+
+import java.util.Arrays;
+
+import static io.trino.spi.StandardErrorCode.INVALID_FUNCTION_ARGUMENT;
+
+/**
+ * Growing union of cell ids kept in a primitive long[].
+ *
+ * Added ids are appended and the array is normalized with S2Helper.normalize whenever
+ * it fills up. It only grows when normalizing leaves it more than half full, so the
+ * normalization cost is amortized over the input and memory follows the union size.
+ */
+public final class S2CellIdUnion {
+
+    private static final int INSTANCE_SIZE = 32;
+    private static final int INITIAL_CAPACITY = 16;
+
+    private long[] ids = new long[INITIAL_CAPACITY];
+    private int size;
+    private int normalizedSize;
+
+    public void add(long id) {
+        if (size == ids.length) {
+            normalize();
+            if (size * 2 > ids.length) {
+                ids = Arrays.copyOf(ids, ids.length * 2);
+            }
+        }
+        ids[size++] = id;
+    }
+
+    public void addAll(S2CellIdUnion other) {
+        if (size + other.size > ids.length) {
+            ids = Arrays.copyOf(ids, Math.max(ids.length * 2, size + other.size));
+        }
+        System.arraycopy(other.ids, 0, ids, size, other.size);
+        size += other.size;
+        normalize();
+    }
+
+    public void normalize() {
+        if (normalizedSize != size) {
+            size = S2Helper.normalize(ids, size);
+            normalizedSize = size;
+        }
+    }
+
+    /**
+     * Number of cells in the normalized union.
+     */
+    public int size() {
+        normalize();
+        return size;
+    }
+
+    /**
+     * Cell ids of the normalized union in cell id order.
+     */
+    public long cellId(int index) {
+        normalize();
+        return ids[index];
+    }
+
+    public long getEstimatedSize() {
+        return INSTANCE_SIZE + 16 + (long) ids.length * Long.BYTES;
+    }
+
+    /**
+     * Serializes the normalized union as a varint count and varint deltas between sorted ids.
+     */
+    public Slice serialize() {
+        normalize();
+        DynamicSliceOutput output = new DynamicSliceOutput(5 + size * 4);
+        writeVarint(output, size);
+        long previous = 0;
+        for (int i = 0; i < size; i++) {
+            writeVarint(output, ids[i] - previous);
+            previous = ids[i];
+        }
+        return output.slice();
+    }
+
+    public static S2CellIdUnion deserialize(Slice serialized) {
+        SliceInput input = serialized.getInput();
+        int count = (int) readVarint(input);
+        S2CellIdUnion union = new S2CellIdUnion();
+        union.ids = new long[Math.max(INITIAL_CAPACITY, count)];
+        long previous = 0;
+        for (int i = 0; i < count; i++) {
+            previous += readVarint(input);
+            union.ids[i] = previous;
+        }
+        union.size = count;
+        union.normalizedSize = count;
+        return union;
+    }
+
+    private static void writeVarint(DynamicSliceOutput output, long value) {
+        while ((value & ~0x7FL) != 0) {
+            output.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        output.writeByte((int) value);
+    }
+
+    private static long readVarint(SliceInput input) {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = input.readByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new TrinoException(INVALID_FUNCTION_ARGUMENT, "Malformed cell union");
+    }
+}
@@ -0,0 +1,15 @@
+package io.trino.s2.geometry.functions;
+
+import io.trino.spi.function.AccumulatorState;
+import io.trino.spi.function.AccumulatorStateMetadata;
+
+@AccumulatorStateMetadata(stateFactoryClass = S2CellIdUnionStateFactory.class, stateSerializerClass = S2CellIdUnionStateSerializer.class)
+public interface S2CellIdUnionState
+        extends AccumulatorState
+{
+    S2CellIdUnion getUnion();
+
+    void setUnion(S2CellIdUnion union);
+
+    void addMemoryUsage(long memory);
+}
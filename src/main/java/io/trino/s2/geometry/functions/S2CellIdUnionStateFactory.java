@@ -0,0 +1,101 @@
+package io.trino.s2.geometry.functions;
+
+import io.trino.spi.function.AccumulatorStateFactory;
+import io.trino.spi.function.GroupedAccumulatorState;
+
+import java.util.Arrays;
+
+public class S2CellIdUnionStateFactory
+        implements AccumulatorStateFactory<S2CellIdUnionState>
+{
+    @Override
+    public S2CellIdUnionState createSingleState()
+    {
+        return new SingleS2CellIdUnionState();
+    }
+
+    @Override
+    public S2CellIdUnionState createGroupedState()
+    {
+        return new GroupedS2CellIdUnionState();
+    }
+
+    public static class GroupedS2CellIdUnionState
+            implements GroupedAccumulatorState, S2CellIdUnionState
+    {
+        private static final int INSTANCE_SIZE = 40;
+
+        private S2CellIdUnion[] unions = new S2CellIdUnion[0];
+        private int groupId;
+        private long memoryUsage;
+
+        @Override
+        public void setGroupId(int groupId)
+        {
+            this.groupId = groupId;
+        }
+
+        @Override
+        public void ensureCapacity(int size)
+        {
+            if (unions.length < size) {
+                unions = Arrays.copyOf(unions, Math.max(size, unions.length * 2));
+            }
+        }
+
+        @Override
+        public S2CellIdUnion getUnion()
+        {
+            return unions[groupId];
+        }
+
+        @Override
+        public void setUnion(S2CellIdUnion union)
+        {
+            unions[groupId] = union;
+        }
+
+        @Override
+        public void addMemoryUsage(long memory)
+        {
+            memoryUsage += memory;
+        }
+
+        @Override
+        public long getEstimatedSize()
+        {
+            return INSTANCE_SIZE + 16 + (long) unions.length * 8 + memoryUsage;
+        }
+    }
+
+    public static class SingleS2CellIdUnionState
+            implements S2CellIdUnionState
+    {
+        private static final int INSTANCE_SIZE = 16;
+
+        private S2CellIdUnion union;
+
+        @Override
+        public S2CellIdUnion getUnion()
+        {
+            return union;
+        }
+
+        @Override
+        public void setUnion(S2CellIdUnion union)
+        {
+            this.union = union;
+        }
+
+        @Override
+        public void addMemoryUsage(long memory)
+        {
+        }
+
+        @Override
+        public long getEstimatedSize()
+        {
+            return INSTANCE_SIZE + (union == null ? 0 : union.getEstimatedSize());
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package io.trino.s2.geometry.functions;
+
+import io.trino.spi.block.Block;
+import io.trino.spi.block.BlockBuilder;
+import io.trino.spi.function.AccumulatorStateSerializer;
+import io.trino.spi.type.Type;
+
+import static io.trino.spi.type.VarbinaryType.VARBINARY;
+
+public class S2CellIdUnionStateSerializer
+        implements AccumulatorStateSerializer<S2CellIdUnionState>
+{
+    @Override
+    public Type getSerializedType()
+    {
+        return VARBINARY;
+    }
+
+    @Override
+    public void serialize(S2CellIdUnionState state, BlockBuilder out)
+    {
+        if (state.getUnion() == null) {
+            out.appendNull();
+        }
+        else {
+            VARBINARY.writeSlice(out, state.getUnion().serialize());
+        }
+    }
+
+    @Override
+    public void deserialize(Block block, int index, S2CellIdUnionState state)
+    {
+        state.setUnion(S2CellIdUnion.deserialize(VARBINARY.getSlice(block, index)));
+    }
+}
@@ -0,0 +1,242 @@
+package io.trino.s2.geometry.functions;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import io.trino.spi.block.Block;
+import io.trino.spi.block.RowBlockBuilder;
+import io.trino.spi.block.SqlRow;
+import io.trino.spi.type.ArrayType;
+import io.trino.spi.type.RowType;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static io.trino.spi.type.BigintType.BIGINT;
+import static io.trino.spi.type.RowType.field;
+import static io.trino.spi.type.VarcharType.VARCHAR;
+
+/**
+ * Normalized cell union stored as a sorted long[] of disjoint leaf id ranges,
+ * answering containment with a binary search and no allocation.
+ *
+ * Range bounds are kept with the sign bit flipped, so signed long order matches
+ * the unsigned order of cell ids.
+ */
+public final class S2CellRanges {
+
+    public static final RowType RANGE = RowType.from(List.of(field("range_min", BIGINT), field("range_max", BIGINT)));
+    public static final ArrayType RANGE_ARRAY = new ArrayType(RANGE);
+    public static final RowType BOUNDS = RowType.from(List.of(field("range_min", BIGINT), field("range_max", BIGINT), field("ranges", RANGE_ARRAY)));
+
+    private static final int MAX_CACHED_BLOCKS = 1000;
+
+    // fewer cells are sorted again for every row, about the cost of a cache lookup
+    private static final int MAX_UNCACHED_CELLS = 32;
+
+    // Keyed by block identity. A block seen again is a constant or broadcast array reused for
+    // every row, only those keep their ranges, a block seen once is only marked as SEEN
+    private static final Cache<Block, S2CellRanges> BLOCKS = CacheBuilder.newBuilder()
+            .weakKeys()
+            .maximumSize(MAX_CACHED_BLOCKS)
+            .build();
+
+    private static final S2CellRanges EMPTY = new S2CellRanges(new long[0]);
+    private static final S2CellRanges SEEN = new S2CellRanges(new long[0]);
+
+    // min0, max0, min1, max1, ... sorted and merged, sign bit flipped
+    private final long[] ranges;
+
+    private S2CellRanges(long[] ranges) {
+        this.ranges = ranges;
+    }
+
+    public static S2CellRanges fromTokenBlock(Block cellTokens) {
+        return fromBlock(cellTokens, true);
+    }
+
+    public static S2CellRanges fromIdBlock(Block cellIds) {
+        return fromBlock(cellIds, false);
+    }
+
+    private static S2CellRanges fromBlock(Block cells, boolean tokens) {
+        if (cells.getPositionCount() <= MAX_UNCACHED_CELLS) {
+            return build(cells, tokens);
+        }
+        S2CellRanges cellRanges = BLOCKS.getIfPresent(cells);
+        if (cellRanges == null) {
+            BLOCKS.put(cells, SEEN);
+            return build(cells, tokens);
+        }
+        if (cellRanges == SEEN) {
+            cellRanges = build(cells, tokens);
+            BLOCKS.put(cells, cellRanges);
+        }
+        return cellRanges;
+    }
+
+    private static S2CellRanges build(Block cells, boolean tokens) {
+        long[] ids = new long[cells.getPositionCount()];
+        int count = 0;
+        for (int i = 0; i < cells.getPositionCount(); i++) {
+            if (!cells.isNull(i)) {
+                ids[count++] = tokens ? S2Helper.tokenToId(VARCHAR.getSlice(cells, i)) : BIGINT.getLong(cells, i);
+            }
+        }
+        return fromCellIds(ids, count);
+    }
+
+    /**
+     * Builds the ranges from the first count ids, which are reordered in place.
+     * Invalid ids are ignored.
+     */
+    public static S2CellRanges fromCellIds(long[] ids, int count) {
+        int valid = 0;
+        for (int i = 0; i < count; i++) {
+            if (S2Helper.isValid(ids[i])) {
+                ids[valid++] = ids[i] ^ Long.MIN_VALUE;
+            }
+        }
+        if (valid == 0) return EMPTY;
+        Arrays.sort(ids, 0, valid);
+
+        // Cells are either nested or disjoint, in id order a cell overlapping the last range
+        // either lies inside it or contains it (and possibly the ranges before it)
+        long[] ranges = new long[2 * valid];
+        int size = 0;
+        for (int i = 0; i < valid; i++) {
+            long id = ids[i] ^ Long.MIN_VALUE;
+            long min = S2Helper.rangeMin(id) ^ Long.MIN_VALUE;
+            long max = S2Helper.rangeMax(id) ^ Long.MIN_VALUE;
+            if (size > 0 && max <= ranges[size - 1]) continue;
+            while (size > 0 && min <= ranges[size - 2]) size -= 2;
+            // consecutive leaf cells are 2 apart
+            if (size > 0 && min <= ranges[size - 1] + 2) {
+                ranges[size - 1] = max;
+            } else {
+                ranges[size++] = min;
+                ranges[size++] = max;
+            }
+        }
+        return new S2CellRanges(Arrays.copyOf(ranges, size));
+    }
+
+    /**
+     * Returns true if the whole cell is covered by the ranges.
+     */
+    public boolean contains(long id) {
+        if (!S2Helper.isValid(id)) return false;
+        int index = floorRange(S2Helper.rangeMin(id) ^ Long.MIN_VALUE);
+        return index >= 0 && (S2Helper.rangeMax(id) ^ Long.MIN_VALUE) <= ranges[2 * index + 1];
+    }
+
+    /**
+     * Returns true if any part of the cell is covered by the ranges.
+     */
+    public boolean intersects(long id) {
+        if (!S2Helper.isValid(id)) return false;
+        long max = S2Helper.rangeMax(id) ^ Long.MIN_VALUE;
+        int index = floorRange(max);
+        return index >= 0 && (S2Helper.rangeMin(id) ^ Long.MIN_VALUE) <= ranges[2 * index + 1];
+    }
+
+    /**
+     * Returns true if any leaf cell is covered by both ranges.
+     */
+    public boolean intersects(S2CellRanges other) {
+        int i = 0;
+        int j = 0;
+        while (i < ranges.length && j < other.ranges.length) {
+            if (ranges[i + 1] < other.ranges[j]) {
+                i += 2;
+            } else if (other.ranges[j + 1] < ranges[i]) {
+                j += 2;
+            } else {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Range bounds as min0, max0, min1, max1, ... in signed BIGINT order, for range predicates
+     * on cell id columns. Cells of faces 4 and 5 have the sign bit set and come first, a range
+     * running from face 3 into face 4 is split in two.
+     */
+    public long[] signedRanges() {
+        long[] signed = new long[ranges.length + 2];
+        int size = 0;
+        // ranges of faces 0 to 3 come first in unsigned order, the last may run into face 4
+        int split = 0;
+        while (split < ranges.length && ranges[split] < 0) {
+            split += 2;
+        }
+        boolean crossing = split > 0 && ranges[split - 1] >= 0;
+        if (crossing) {
+            signed[size++] = Long.MIN_VALUE + 1;
+            signed[size++] = ranges[split - 1] ^ Long.MIN_VALUE;
+        }
+        for (int i = split; i < ranges.length; i += 2) {
+            signed[size++] = ranges[i] ^ Long.MIN_VALUE;
+            signed[size++] = ranges[i + 1] ^ Long.MIN_VALUE;
+        }
+        for (int i = 0; i < split; i += 2) {
+            signed[size++] = ranges[i] ^ Long.MIN_VALUE;
+            signed[size++] = crossing && i == split - 2 ? Long.MAX_VALUE : ranges[i + 1] ^ Long.MIN_VALUE;
+        }
+        return Arrays.copyOf(signed, size);
+    }
+
+    /**
+     * Row of the overall signed span and the signed ranges, null without ranges.
+     */
+    public SqlRow toBoundsRow() {
+        long[] signed = signedRanges();
+        if (signed.length == 0) return null;
+
+        RowBlockBuilder rangeRows = (RowBlockBuilder) RANGE.createBlockBuilder(null, signed.length / 2);
+        for (int i = 0; i < signed.length; i += 2) {
+            long min = signed[i];
+            long max = signed[i + 1];
+            rangeRows.buildEntry(fields -> {
+                BIGINT.writeLong(fields.get(0), min);
+                BIGINT.writeLong(fields.get(1), max);
+            });
+        }
+        Block rangeBlock = rangeRows.build();
+
+        RowBlockBuilder bounds = (RowBlockBuilder) BOUNDS.createBlockBuilder(null, 1);
+        bounds.buildEntry(fields -> {
+            BIGINT.writeLong(fields.get(0), signed[0]);
+            BIGINT.writeLong(fields.get(1), signed[signed.length - 1]);
+            RANGE_ARRAY.writeObject(fields.get(2), rangeBlock);
+        });
+        return (SqlRow) BOUNDS.getObject(bounds.build(), 0);
+    }
+
+    public int numRanges() {
+        return ranges.length / 2;
+    }
+
+    public long rangeMin(int index) {
+        return ranges[2 * index] ^ Long.MIN_VALUE;
+    }
+
+    public long rangeMax(int index) {
+        return ranges[2 * index + 1] ^ Long.MIN_VALUE;
+    }
+
+    // index of the last range starting at or before value, or -1
+    private int floorRange(long value) {
+        int low = 0;
+        int high = ranges.length / 2 - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (ranges[2 * mid] <= value) {
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return high;
+    }
+}
@@ -0,0 +1,57 @@
+package io.trino.s2.geometry.functions;
+
+import io.airlift.slice.Slice;
+import io.airlift.slice.Slices;
+import io.trino.spi.block.Block;
+import io.trino.spi.block.BlockBuilder;
+
+import static io.trino.spi.type.BigintType.BIGINT;
+import static io.trino.spi.type.VarcharType.VARCHAR;
+
+/**
+ * Writes cell ids straight into an array element block, as BIGINT ids or as VARCHAR
+ * tokens encoded into a reused buffer.
+ */
+public final class S2CellWriter {
+
+    private final BlockBuilder blockBuilder;
+    // null when writing ids
+    private final byte[] buffer;
+    private final Slice token;
+    private int count;
+
+    private S2CellWriter(BlockBuilder blockBuilder, byte[] buffer) {
+        this.blockBuilder = blockBuilder;
+        this.buffer = buffer;
+        this.token = buffer == null ? null : Slices.wrappedBuffer(buffer);
+    }
+
+    public static S2CellWriter ids(int expectedCells) {
+        return new S2CellWriter(BIGINT.createBlockBuilder(null, expectedCells), null);
+    }
+
+    /**
+     * Token writer sized for expectedCells cells at level.
+     */
+    public static S2CellWriter tokens(int expectedCells, int level) {
+        return new S2CellWriter(VARCHAR.createBlockBuilder(null, expectedCells, S2Helper.tokenLength(level)), new byte[16]);
+    }
+
+    public void write(long id) {
+        if (buffer == null) {
+            BIGINT.writeLong(blockBuilder, id);
+        }
+        else {
+            VARCHAR.writeSlice(blockBuilder, token, 0, S2Helper.writeToken(id, buffer));
+        }
+        count++;
+    }
+
+    public int count() {
+        return count;
+    }
+
+    public Block build() {
+        return blockBuilder.build();
+    }
+}
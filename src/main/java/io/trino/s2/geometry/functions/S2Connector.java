@@ -0,0 +1,79 @@
+package io.trino.s2.geometry.functions;
+
+import io.trino.spi.connector.Connector;
+import io.trino.spi.connector.ConnectorMetadata;
+import io.trino.spi.connector.ConnectorSession;
+import io.trino.spi.connector.ConnectorSplitManager;
+import io.trino.spi.connector.ConnectorSplitSource;
+import io.trino.spi.connector.ConnectorTransactionHandle;
+import io.trino.spi.function.FunctionProvider;
+import io.trino.spi.function.table.ConnectorTableFunction;
+import io.trino.spi.function.table.ConnectorTableFunctionHandle;
+import io.trino.spi.function.table.TableFunctionProcessorProvider;
+import io.trino.spi.transaction.IsolationLevel;
+
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Connector without tables, serving the s2 table functions.
+ */
+public class S2Connector
+        implements Connector
+{
+    @Override
+    public ConnectorTransactionHandle beginTransaction(IsolationLevel isolationLevel, boolean readOnly, boolean autoCommit)
+    {
+        return S2TransactionHandle.INSTANCE;
+    }
+
+    @Override
+    public ConnectorMetadata getMetadata(ConnectorSession session, ConnectorTransactionHandle transactionHandle)
+    {
+        return new ConnectorMetadata() {};
+    }
+
+    @Override
+    public Set<ConnectorTableFunction> getTableFunctions()
+    {
+        return Set.of(new S2CoverCellsTableFunction());
+    }
+
+    @Override
+    public Optional<FunctionProvider> getFunctionProvider()
+    {
+        return Optional.of(new FunctionProvider()
+        {
+            @Override
+            public TableFunctionProcessorProvider getTableFunctionProcessorProvider(ConnectorTableFunctionHandle functionHandle)
+            {
+                if (functionHandle instanceof S2CoverCellsTableFunction.Handle) {
+                    return new S2CoverCellsTableFunction.ProcessorProvider();
+                }
+                throw new IllegalArgumentException("Unknown table function " + functionHandle);
+            }
+        });
+    }
+
+    @Override
+    public ConnectorSplitManager getSplitManager()
+    {
+        return new ConnectorSplitManager()
+        {
+            @Override
+            public ConnectorSplitSource getSplits(ConnectorTransactionHandle transaction, ConnectorSession session, ConnectorTableFunctionHandle function)
+            {
+                if (function instanceof S2CoverCellsTableFunction.Handle handle) {
+                    return S2CoverCellsTableFunction.splits(handle);
+                }
+                throw new IllegalArgumentException("Unknown table function " + function);
+            }
+        };
+    }
+
+    public enum S2TransactionHandle
+            implements ConnectorTransactionHandle
+    {
+        INSTANCE
+    }
+}
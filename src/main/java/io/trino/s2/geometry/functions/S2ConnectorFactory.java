@@ -0,0 +1,30 @@
+package io.trino.s2.geometry.functions;
+
+import io.trino.spi.connector.Connector;
+import io.trino.spi.connector.ConnectorContext;
+import io.trino.spi.connector.ConnectorFactory;
+
+import java.util.Map;
+
+/**
+ * Connector named s2, only serving the s2 table functions of the plugin.
+ *
+ * Table functions can not be registered through {@link S2GeometryFunctionsPlugin#getFunctions()},
+ * they are found in a catalog: etc/catalog/s2.properties with connector.name=s2 makes them
+ * available as s2.system.s2_cover_cells.
+ */
+public class S2ConnectorFactory
+        implements ConnectorFactory
+{
+    @Override
+    public String getName()
+    {
+        return "s2";
+    }
+
+    @Override
+    public Connector create(String catalogName, Map<String, String> config, ConnectorContext context)
+    {
+        return new S2Connector();
+    }
+}
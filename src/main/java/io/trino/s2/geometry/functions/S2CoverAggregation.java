@@ -0,0 +1,99 @@
+package io.trino.s2.geometry.functions;
+
+import io.trino.spi.TrinoException;
+import io.trino.spi.block.BlockBuilder;
+import io.trino.spi.function.AggregationFunction;
+import io.trino.spi.function.AggregationState;
+import io.trino.spi.function.CombineFunction;
+import io.trino.spi.function.Description;
+import io.trino.spi.function.InputFunction;
+import io.trino.spi.function.OutputFunction;
+import io.trino.spi.function.SqlType;
+import io.trino.spi.type.ArrayType;
+import io.trino.spi.type.StandardTypes;
+
+import static io.trino.spi.StandardErrorCode.INVALID_FUNCTION_ARGUMENT;
+import static io.trino.spi.type.BigintType.BIGINT;
+import static java.lang.Math.toIntExact;
+
+@AggregationFunction("s2_cover_agg")
+@Description("Returns the normalized cell union of cell ids, optionally coarsened to a level")
+public final class S2CoverAggregation
+{
+    private static final ArrayType BIGINT_ARRAY = new ArrayType(BIGINT);
+
+    private S2CoverAggregation() {}
+
+    @InputFunction
+    public static void input(@AggregationState S2CellIdUnionState state, @SqlType(StandardTypes.BIGINT) long cellid)
+    {
+        add(state, cellid);
+    }
+
+    @InputFunction
+    public static void input(@AggregationState S2CellIdUnionState state, @SqlType(StandardTypes.BIGINT) long cellid, @SqlType(StandardTypes.INTEGER) long level)
+    {
+        add(state, coarsen(cellid, level));
+    }
+
+    @CombineFunction
+    public static void combine(@AggregationState S2CellIdUnionState state, @AggregationState S2CellIdUnionState otherState)
+    {
+        S2CellIdUnion other = otherState.getUnion();
+        if (other == null) {
+            return;
+        }
+        S2CellIdUnion union = state.getUnion();
+        if (union == null) {
+            state.setUnion(other);
+            state.addMemoryUsage(other.getEstimatedSize());
+            return;
+        }
+        long size = union.getEstimatedSize();
+        union.addAll(other);
+        state.addMemoryUsage(union.getEstimatedSize() - size);
+    }
+
+    @OutputFunction("array(bigint)")
+    public static void output(@AggregationState S2CellIdUnionState state, BlockBuilder out)
+    {
+        S2CellIdUnion union = state.getUnion();
+        if (union == null) {
+            out.appendNull();
+            return;
+        }
+        BlockBuilder cells = BIGINT.createBlockBuilder(null, union.size());
+        for (int i = 0; i < union.size(); i++) {
+            BIGINT.writeLong(cells, union.cellId(i));
+        }
+        BIGINT_ARRAY.writeObject(out, cells.build());
+    }
+
+    static void add(S2CellIdUnionState state, long cellid)
+    {
+        if (!S2Helper.isValid(cellid)) {
+            return;
+        }
+        S2CellIdUnion union = state.getUnion();
+        if (union == null) {
+            union = new S2CellIdUnion();
+            state.setUnion(union);
+            state.addMemoryUsage(union.getEstimatedSize());
+        }
+        long size = union.getEstimatedSize();
+        union.add(cellid);
+        state.addMemoryUsage(union.getEstimatedSize() - size);
+    }
+
+    // cells finer than level are replaced by their ancestor at level
+    static long coarsen(long cellid, long level)
+    {
+        if (level < 0 || level > 30) {
+            throw new TrinoException(INVALID_FUNCTION_ARGUMENT, "Level must be between 0 and 30");
+        }
+        if (S2Helper.isValid(cellid) && S2Helper.level(cellid) > level) {
+            return S2Helper.parent(cellid, toIntExact(level));
+        }
+        return cellid;
+    }
+}
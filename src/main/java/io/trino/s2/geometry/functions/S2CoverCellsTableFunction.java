@@ -0,0 +1,173 @@
+package io.trino.s2.geometry.functions;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.google.common.geometry.S2CellId;
+import com.google.common.geometry.S2CellUnion;
+import io.airlift.slice.Slice;
+import io.trino.spi.Page;
+import io.trino.spi.TrinoException;
+import io.trino.spi.connector.ConnectorAccessControl;
+import io.trino.spi.connector.ConnectorSession;
+import io.trino.spi.connector.ConnectorSplit;
+import io.trino.spi.connector.ConnectorSplitSource;
+import io.trino.spi.connector.ConnectorTransactionHandle;
+import io.trino.spi.connector.FixedSplitSource;
+import io.trino.spi.function.table.AbstractConnectorTableFunction;
+import io.trino.spi.function.table.Argument;
+import io.trino.spi.function.table.ConnectorTableFunctionHandle;
+import io.trino.spi.function.table.Descriptor;
+import io.trino.spi.function.table.ReturnTypeSpecification.DescribedTable;
+import io.trino.spi.function.table.ScalarArgument;
+import io.trino.spi.function.table.ScalarArgumentSpecification;
+import io.trino.spi.function.table.TableFunctionAnalysis;
+import io.trino.spi.function.table.TableFunctionProcessorProvider;
+import io.trino.spi.function.table.TableFunctionProcessorState;
+import io.trino.spi.function.table.TableFunctionSplitProcessor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static io.airlift.slice.Slices.utf8Slice;
+import static io.trino.spi.StandardErrorCode.INVALID_FUNCTION_ARGUMENT;
+import static io.trino.spi.function.table.TableFunctionProcessorState.Finished.FINISHED;
+import static io.trino.spi.function.table.TableFunctionProcessorState.Processed.produced;
+import static io.trino.spi.type.BigintType.BIGINT;
+import static io.trino.spi.type.IntegerType.INTEGER;
+import static io.trino.spi.type.VarcharType.VARCHAR;
+
+/**
+ * TABLE(s2.system.s2_cover_cells(wkt, min_level, max_level)) returns the cells covering a polygon
+ * as rows of (cell varchar, cell_id bigint), in pages of at most PAGE_CELLS cells.
+ *
+ * Unlike s2_polygon_cover the covering is never built as a whole: a coarse covering at or
+ * above min_level gives one split per cell, and each split walks the cells below it with an
+ * {@link S2StreamingCoverer}. Memory stays flat however many cells the covering has, and
+ * there is no max_cells limit.
+ */
+public class S2CoverCellsTableFunction
+        extends AbstractConnectorTableFunction
+{
+    static final int PAGE_CELLS = 8192;
+
+    private static final int MAX_SPLITS = 64;
+
+    public S2CoverCellsTableFunction()
+    {
+        super(
+                "system",
+                "s2_cover_cells",
+                List.of(
+                        ScalarArgumentSpecification.builder().name("WKT").type(VARCHAR).build(),
+                        ScalarArgumentSpecification.builder().name("MIN_LEVEL").type(INTEGER).build(),
+                        ScalarArgumentSpecification.builder().name("MAX_LEVEL").type(INTEGER).build()),
+                new DescribedTable(Descriptor.descriptor(List.of("cell", "cell_id"), List.of(VARCHAR, BIGINT))));
+    }
+
+    @Override
+    public TableFunctionAnalysis analyze(ConnectorSession session, ConnectorTransactionHandle transaction, Map<String, Argument> arguments, ConnectorAccessControl accessControl)
+    {
+        Object wkt = ((ScalarArgument) arguments.get("WKT")).getValue();
+        Object minLevel = ((ScalarArgument) arguments.get("MIN_LEVEL")).getValue();
+        Object maxLevel = ((ScalarArgument) arguments.get("MAX_LEVEL")).getValue();
+        if (wkt == null || minLevel == null || maxLevel == null) {
+            throw new TrinoException(INVALID_FUNCTION_ARGUMENT, "s2_cover_cells arguments must not be null");
+        }
+        long min = (Long) minLevel;
+        long max = (Long) maxLevel;
+        if (min<0 || max>30 || min>max) {
+            throw new TrinoException(INVALID_FUNCTION_ARGUMENT, "Levels must satisfy 0 <= min_level <= max_level <= 30");
+        }
+        return TableFunctionAnalysis.builder()
+                .handle(new Handle(((Slice) wkt).toStringUtf8(), (int) min, (int) max))
+                .build();
+    }
+
+    /**
+     * One split per cell of a coarse covering at or above min_level, none for an invalid polygon.
+     */
+    static ConnectorSplitSource splits(Handle handle)
+    {
+        S2CellUnion roots = S2PolygonCache.cover(utf8Slice(handle.wkt()), 0, handle.minLevel(), MAX_SPLITS, 1);
+        List<Split> splits = new ArrayList<>();
+        if (roots != null) {
+            for (S2CellId root : roots.cellIds()) {
+                splits.add(new Split(root.id()));
+            }
+        }
+        return new FixedSplitSource(splits);
+    }
+
+    public record Handle(@JsonProperty("wkt") String wkt, @JsonProperty("minLevel") int minLevel, @JsonProperty("maxLevel") int maxLevel)
+            implements ConnectorTableFunctionHandle
+    {
+        @JsonCreator
+        public Handle {}
+    }
+
+    public record Split(@JsonProperty("root") long root)
+            implements ConnectorSplit
+    {
+        @JsonCreator
+        public Split {}
+
+        @Override
+        public Object getInfo()
+        {
+            return Map.of("root", new S2CellId(root).toToken());
+        }
+
+        @Override
+        public long getRetainedSizeInBytes()
+        {
+            return 24;
+        }
+    }
+
+    public static class ProcessorProvider
+            implements TableFunctionProcessorProvider
+    {
+        @Override
+        public TableFunctionSplitProcessor getSplitProcessor(ConnectorSession session, ConnectorTableFunctionHandle handle, ConnectorSplit split)
+        {
+            Handle cover = (Handle) handle;
+            S2StreamingCoverer coverer = new S2StreamingCoverer(
+                    S2PolygonCache.polygon(utf8Slice(cover.wkt())),
+                    ((Split) split).root(),
+                    cover.minLevel(),
+                    cover.maxLevel());
+            return new Processor(coverer, cover.maxLevel());
+        }
+    }
+
+    private static class Processor
+            implements TableFunctionSplitProcessor
+    {
+        private final S2StreamingCoverer coverer;
+        private final int maxLevel;
+        private final long[] ids = new long[PAGE_CELLS];
+
+        private Processor(S2StreamingCoverer coverer, int maxLevel)
+        {
+            this.coverer = coverer;
+            this.maxLevel = maxLevel;
+        }
+
+        @Override
+        public TableFunctionProcessorState process()
+        {
+            int count = coverer.next(ids);
+            if (count == 0) {
+                return FINISHED;
+            }
+            S2CellWriter tokens = S2CellWriter.tokens(count, maxLevel);
+            S2CellWriter cellIds = S2CellWriter.ids(count);
+            for (int i = 0; i < count; i++) {
+                tokens.write(ids[i]);
+                cellIds.write(ids[i]);
+            }
+            return produced(new Page(count, tokens.build(), cellIds.build()));
+        }
+    }
+}
@@ -0,0 +1,371 @@
+package io.trino.s2.geometry.functions;
+
+import com.google.common.geometry.S2CellId;
+import com.google.common.geometry.S2CellUnion;
+import io.airlift.slice.Slice;
+import io.trino.spi.block.Block;
+import io.trino.spi.block.SqlRow;
+import io.trino.spi.function.Description;
+import io.trino.spi.function.ScalarFunction;
+import io.trino.spi.function.SqlNullable;
+import io.trino.spi.function.SqlType;
+import io.trino.spi.type.StandardTypes;
+
+import static io.trino.s2.geometry.functions.S2CellIdFunctions.cellIdsArrayBlock;
+import static io.trino.s2.geometry.functions.S2GeometryFunctions.cellsArrayBlock;
+import static java.lang.Math.toIntExact;
+
+/**
+ * VARBINARY polygon counterparts of the wkt polygon functions in {@link S2GeometryFunctions}
+ * and {@link S2CellIdFunctions}, taking the encoding returned by s2_polygon_encode so that
+ * stored polygons are decoded instead of parsed from wkt text.
+ */
+public class S2EncodedPolygonFunctions {
+
+    private S2EncodedPolygonFunctions() {}
+
+    @ScalarFunction("s2_polygon_encode")
+    @Description("Returns the lossless binary encoding of a wkt polygon")
+    @SqlType(StandardTypes.VARBINARY)
+    public static Slice s2PolygonEncode(
+            @SqlType(StandardTypes.VARCHAR) Slice wktPolygon)
+    {
+        return S2Helper.encodePolygon(S2PolygonCache.polygon(wktPolygon));
+    }
+
+    @ScalarFunction("s2_polygon_cover")
+    @Description("Returns cell tokens cover of an encoded polygon")
+    @SqlType("array(varchar)")
+    @SqlNullable
+    public static Block s2PolygonCover(
+            @SqlType(StandardTypes.VARBINARY) Slice polygon,
+            @SqlType(StandardTypes.INTEGER) long level)
+    {
+        return s2PolygonCover(polygon, level, level);
+    }
+
+    @ScalarFunction("s2_polygon_cover")
+    @Description("Returns cell tokens cover of an encoded polygon")
+    @SqlType("array(varchar)")
+    @SqlNullable
+    public static Block s2PolygonCover(
+            @SqlType(StandardTypes.VARBINARY) Slice polygon,
+            @SqlType(StandardTypes.INTEGER) long min_level,
+            @SqlType(StandardTypes.INTEGER) long max_level)
+    {
+        if (min_level<0 || min_level>30) return null;
+        if (max_level<0 || max_level>30) return null;
+
+        S2CellUnion cover = S2PolygonCache.decodedCover(polygon, toIntExact(min_level), toIntExact(max_level));
+        if (cover==null) return null;
+        return cellsArrayBlock(cover.cellIds());
+    }
+
+    @ScalarFunction("s2_polygon_cover")
+    @Description("Returns cell tokens cover of an encoded polygon with at most max_cells cells when levels allow")
+    @SqlType("array(varchar)")
+    @SqlNullable
+    public static Block s2PolygonCover(
+            @SqlType(StandardTypes.VARBINARY) Slice polygon,
+            @SqlType(StandardTypes.INTEGER) long min_level,
+            @SqlType(StandardTypes.INTEGER) long max_level,
+            @SqlType(StandardTypes.INTEGER) long max_cells)
+    {
+        return s2PolygonCover(polygon, min_level, max_level, max_cells, 1);
+    }
+
+    @ScalarFunction("s2_polygon_cover")
+    @Description("Returns cell tokens cover of an encoded polygon with at most max_cells cells when levels allow, using levels min_level + k * level_mod")
+    @SqlType("array(varchar)")
+    @SqlNullable
+    public static Block s2PolygonCover(
+            @SqlType(StandardTypes.VARBINARY) Slice polygon,
+            @SqlType(StandardTypes.INTEGER) long min_level,
+            @SqlType(StandardTypes.INTEGER) long max_level,
+            @SqlType(StandardTypes.INTEGER) long max_cells,
+            @SqlType(StandardTypes.INTEGER) long level_mod)
+    {
+        S2CellUnion cover = cover(polygon, min_level, max_level, max_cells, level_mod, false);
+        if (cover==null) return null;
+        return cellsArrayBlock(cover.cellIds());
+    }
+
+    @ScalarFunction("s2_polygon_cover_ids")
+    @Description("Returns cell ids cover of an encoded polygon")
+    @SqlType("array(bigint)")
+    @SqlNullable
+    public static Block s2PolygonCoverIds(
+            @SqlType(StandardTypes.VARBINARY) Slice polygon,
+            @SqlType(StandardTypes.INTEGER) long level)
+    {
+        return s2PolygonCoverIds(polygon, level, level);
+    }
+
+    @ScalarFunction("s2_polygon_cover_ids")
+    @Description("Returns cell ids cover of an encoded polygon")
+    @SqlType("array(bigint)")
+    @SqlNullable
+    public static Block s2PolygonCoverIds(
+            @SqlType(StandardTypes.VARBINARY) Slice polygon,
+            @SqlType(StandardTypes.INTEGER) long min_level,
+            @SqlType(StandardTypes.INTEGER) long max_level)
+    {
+        if (min_level<0 || min_level>30) return null;
+        if (max_level<0 || max_level>30) return null;
+
+        S2CellUnion cover = S2PolygonCache.decodedCover(polygon, toIntExact(min_level), toIntExact(max_level));
+        if (cover==null) return null;
+        return cellIdsArrayBlock(cover.cellIds());
+    }
+
+    @ScalarFunction("s2_polygon_cover_ids")
+    @Description("Returns cell ids cover of an encoded polygon with at most max_cells cells when levels allow")
+    @SqlType("array(bigint)")
+    @SqlNullable
+    public static Block s2PolygonCoverIds(
+            @SqlType(StandardTypes.VARBINARY) Slice polygon,
+            @SqlType(StandardTypes.INTEGER) long min_level,
+            @SqlType(StandardTypes.INTEGER) long max_level,
+            @SqlType(StandardTypes.INTEGER) long max_cells)
+    {
+        return s2PolygonCoverIds(polygon, min_level, max_level, max_cells, 1);
+    }
+
+    @ScalarFunction("s2_polygon_cover_ids")
+    @Description("Returns cell ids cover of an encoded polygon with at most max_cells cells when levels allow, using levels min_level + k * level_mod")
+    @SqlType("array(bigint)")
+    @SqlNullable
+    public static Block s2PolygonCoverIds(
+            @SqlType(StandardTypes.VARBINARY) Slice polygon,
+            @SqlType(StandardTypes.INTEGER) long min_level,
+            @SqlType(StandardTypes.INTEGER) long max_level,
+            @SqlType(StandardTypes.INTEGER) long max_cells,
+            @SqlType(StandardTypes.INTEGER) long level_mod)
+    {
+        S2CellUnion cover = cover(polygon, min_level, max_level, max_cells, level_mod, false);
+        if (cover==null) return null;
+        return cellIdsArrayBlock(cover.cellIds());
+    }
+
+    @ScalarFunction("s2_polygon_interior_cover")
+    @Description("Returns cell tokens entirely inside an encoded polygon at a level")
+    @SqlType("array(varchar)")
+    @SqlNullable
+    public static Block s2PolygonInteriorCover(
+            @SqlType(StandardTypes.VARBINARY) Slice polygon,
+            @SqlType(StandardTypes.INTEGER) long level)
+    {
+        return s2PolygonInteriorCover(polygon, level, level, Integer.MAX_VALUE, 1);
+    }
+
+    @ScalarFunction("s2_polygon_interior_cover")
+    @Description("Returns cell tokens entirely inside an encoded polygon, at most max_cells cells")
+    @SqlType("array(varchar)")
+    @SqlNullable
+    public static Block s2PolygonInteriorCover(
+            @SqlType(StandardTypes.VARBINARY) Slice polygon,
+            @SqlType(StandardTypes.INTEGER) long min_level,
+            @SqlType(StandardTypes.INTEGER) long max_level,
+            @SqlType(StandardTypes.INTEGER) long max_cells)
+    {
+        return s2PolygonInteriorCover(polygon, min_level, max_level, max_cells, 1);
+    }
+
+    @ScalarFunction("s2_polygon_interior_cover")
+    @Description("Returns cell tokens entirely inside an encoded polygon, at most max_cells cells, using levels min_level + k * level_mod")
+    @SqlType("array(varchar)")
+    @SqlNullable
+    public static Block s2PolygonInteriorCover(
+            @SqlType(StandardTypes.VARBINARY) Slice polygon,
+            @SqlType(StandardTypes.INTEGER) long min_level,
+            @SqlType(StandardTypes.INTEGER) long max_level,
+            @SqlType(StandardTypes.INTEGER) long max_cells,
+            @SqlType(StandardTypes.INTEGER) long level_mod)
+    {
+        S2CellUnion cover = cover(polygon, min_level, max_level, max_cells, level_mod, true);
+        if (cover==null) return null;
+        return cellsArrayBlock(cover.cellIds());
+    }
+
+    @ScalarFunction("s2_polygon_interior_cover_ids")
+    @Description("Returns cell ids entirely inside an encoded polygon at a level")
+    @SqlType("array(bigint)")
+    @SqlNullable
+    public static Block s2PolygonInteriorCoverIds(
+            @SqlType(StandardTypes.VARBINARY) Slice polygon,
+            @SqlType(StandardTypes.INTEGER) long level)
+    {
+        return s2PolygonInteriorCoverIds(polygon, level, level, Integer.MAX_VALUE, 1);
+    }
+
+    @ScalarFunction("s2_polygon_interior_cover_ids")
+    @Description("Returns cell ids entirely inside an encoded polygon, at most max_cells cells")
+    @SqlType("array(bigint)")
+    @SqlNullable
+    public static Block s2PolygonInteriorCoverIds(
+            @SqlType(StandardTypes.VARBINARY) Slice polygon,
+            @SqlType(StandardTypes.INTEGER) long min_level,
+            @SqlType(StandardTypes.INTEGER) long max_level,
+            @SqlType(StandardTypes.INTEGER) long max_cells)
+    {
+        return s2PolygonInteriorCoverIds(polygon, min_level, max_level, max_cells, 1);
+    }
+
+    @ScalarFunction("s2_polygon_interior_cover_ids")
+    @Description("Returns cell ids entirely inside an encoded polygon, at most max_cells cells, using levels min_level + k * level_mod")
+    @SqlType("array(bigint)")
+    @SqlNullable
+    public static Block s2PolygonInteriorCoverIds(
+            @SqlType(StandardTypes.VARBINARY) Slice polygon,
+            @SqlType(StandardTypes.INTEGER) long min_level,
+            @SqlType(StandardTypes.INTEGER) long max_level,
+            @SqlType(StandardTypes.INTEGER) long max_cells,
+            @SqlType(StandardTypes.INTEGER) long level_mod)
+    {
+        S2CellUnion cover = cover(polygon, min_level, max_level, max_cells, level_mod, true);
+        if (cover==null) return null;
+        return cellIdsArrayBlock(cover.cellIds());
+    }
+
+    @ScalarFunction("s2_within")
+    @Description("Returns TRUE if a cell token is in coverage of an encoded polygon")
+    @SqlType(StandardTypes.BOOLEAN)
+    @SqlNullable
+    public static Boolean s2Within(
+            @SqlType(StandardTypes.VARCHAR) Slice cellToken,
+            @SqlType(StandardTypes.VARBINARY) Slice polygon,
+            @SqlType(StandardTypes.INTEGER) long level)
+    {
+        if (level<0 || level>30) return null;
+
+        S2CellUnion cover = S2PolygonCache.decodedCover(polygon, toIntExact(level));
+        if (cover==null) return false;
+        return cover.contains(S2CellId.fromToken(cellToken.toStringUtf8()));
+    }
+
+    @ScalarFunction("s2_contains")
+    @Description("Returns TRUE if coverage of an encoded polygon contains a cell token")
+    @SqlType(StandardTypes.BOOLEAN)
+    @SqlNullable
+    public static Boolean s2Contains(
+            @SqlType(StandardTypes.VARBINARY) Slice polygon,
+            @SqlType(StandardTypes.VARCHAR) Slice cellToken,
+            @SqlType(StandardTypes.INTEGER) long level)
+    {
+        return s2Within(cellToken, polygon, level);
+    }
+
+    @ScalarFunction("s2_within")
+    @Description("Returns TRUE if a cell id is in coverage of an encoded polygon")
+    @SqlType(StandardTypes.BOOLEAN)
+    @SqlNullable
+    public static Boolean s2Within(
+            @SqlType(StandardTypes.BIGINT) long cellid,
+            @SqlType(StandardTypes.VARBINARY) Slice polygon,
+            @SqlType(StandardTypes.INTEGER) long level)
+    {
+        if (level<0 || level>30) return null;
+
+        S2CellUnion cover = S2PolygonCache.decodedCover(polygon, toIntExact(level));
+        if (cover==null) return false;
+        return cover.contains(new S2CellId(cellid));
+    }
+
+    @ScalarFunction("s2_contains")
+    @Description("Returns TRUE if coverage of an encoded polygon contains a cell id")
+    @SqlType(StandardTypes.BOOLEAN)
+    @SqlNullable
+    public static Boolean s2Contains(
+            @SqlType(StandardTypes.VARBINARY) Slice polygon,
+            @SqlType(StandardTypes.BIGINT) long cellid,
+            @SqlType(StandardTypes.INTEGER) long level)
+    {
+        return s2Within(cellid, polygon, level);
+    }
+
+    @ScalarFunction("s2_polygon_cover_bounds")
+    @Description("Returns the cell id span and the merged cell id ranges of the encoded polygon cover for a specific level, in BIGINT order")
+    @SqlType("row(range_min bigint, range_max bigint, ranges array(row(range_min bigint, range_max bigint)))")
+    @SqlNullable
+    public static SqlRow s2PolygonCoverBounds(
+            @SqlType(StandardTypes.VARBINARY) Slice polygon,
+            @SqlType(StandardTypes.INTEGER) long level)
+    {
+        if (level<0 || level>30) return null;
+
+        return S2GeometryFunctions.coverBounds(S2PolygonCache.decodedCover(polygon, toIntExact(level)));
+    }
+
+    @ScalarFunction("s2_intersects")
+    @Description("Returns TRUE if two encoded polygons have any point in common")
+    @SqlType(StandardTypes.BOOLEAN)
+    public static boolean s2Intersects(
+            @SqlType(StandardTypes.VARBINARY) Slice polygonA,
+            @SqlType(StandardTypes.VARBINARY) Slice polygonB)
+    {
+        return S2PolygonCache.decodedPrepared(polygonA).intersects(S2PolygonCache.decodedPrepared(polygonB));
+    }
+
+    @ScalarFunction("s2_intersection_area")
+    @Description("Returns the area in square meters of the intersection of two encoded polygons")
+    @SqlType(StandardTypes.DOUBLE)
+    @SqlNullable
+    public static Double s2IntersectionArea(
+            @SqlType(StandardTypes.VARBINARY) Slice polygonA,
+            @SqlType(StandardTypes.VARBINARY) Slice polygonB)
+    {
+        return S2GeometryFunctions.intersectionArea(S2PolygonCache.decodedPrepared(polygonA), S2PolygonCache.decodedPrepared(polygonB));
+    }
+
+    @ScalarFunction("s2_area")
+    @Description("Returns the area in square meters of an encoded polygon")
+    @SqlType(StandardTypes.DOUBLE)
+    @SqlNullable
+    public static Double s2Area(@SqlType(StandardTypes.VARBINARY) Slice polygon)
+    {
+        return S2GeometryFunctions.area(S2PolygonCache.decodedPrepared(polygon));
+    }
+
+    @ScalarFunction("s2_polygon_contains_point")
+    @Description("Returns TRUE if an encoded polygon contains the point at latitude,longitude degrees")
+    @SqlType(StandardTypes.BOOLEAN)
+    public static boolean s2PolygonContainsPoint(
+            @SqlType(StandardTypes.VARBINARY) Slice polygon,
+            @SqlType(StandardTypes.DOUBLE) double lat,
+            @SqlType(StandardTypes.DOUBLE) double lon)
+    {
+        return S2PolygonCache.decodedPrepared(polygon).contains(lat, lon);
+    }
+
+    @ScalarFunction("s2_polygon_contains_point")
+    @Description("Returns TRUE if an encoded polygon contains the center of a cell token")
+    @SqlType(StandardTypes.BOOLEAN)
+    public static boolean s2PolygonContainsPoint(
+            @SqlType(StandardTypes.VARBINARY) Slice polygon,
+            @SqlType(StandardTypes.VARCHAR) Slice cellToken)
+    {
+        return S2PolygonCache.decodedPrepared(polygon).containsCenter(S2Helper.tokenToId(cellToken));
+    }
+
+    @ScalarFunction("s2_polygon_contains_point")
+    @Description("Returns TRUE if an encoded polygon contains the center of a cell id")
+    @SqlType(StandardTypes.BOOLEAN)
+    public static boolean s2PolygonContainsPoint(
+            @SqlType(StandardTypes.VARBINARY) Slice polygon,
+            @SqlType(StandardTypes.BIGINT) long cellid)
+    {
+        return S2PolygonCache.decodedPrepared(polygon).containsCenter(cellid);
+    }
+
+    private static S2CellUnion cover(Slice polygon, long min_level, long max_level, long max_cells, long level_mod, boolean interior)
+    {
+        if (min_level<0 || min_level>30) return null;
+        if (max_level<0 || max_level>30) return null;
+        if (max_cells<1 || level_mod<1 || level_mod>3) return null;
+
+        int maxCells = (int) Math.min(max_cells, Integer.MAX_VALUE);
+        return interior
+                ? S2PolygonCache.decodedInteriorCover(polygon, toIntExact(min_level), toIntExact(max_level), maxCells, toIntExact(level_mod))
+                : S2PolygonCache.decodedCover(polygon, toIntExact(min_level), toIntExact(max_level), maxCells, toIntExact(level_mod));
+    }
+}
@@ -3,22 +3,20 @@ package io.trino.s2.geometry.functions;
 /**
  * Created by guycohen on 18/05/2017.
  */
-import com.google.common.geometry.S1Angle;
-import com.google.common.geometry.S2Cap;
 import com.google.common.geometry.S2CellId;
 import com.google.common.geometry.S2CellUnion;
 import com.google.common.geometry.S2LatLng;
-import com.google.common.geometry.S2RegionCoverer;
 import io.trino.spi.block.Block;
 import io.trino.spi.block.BlockBuilder;
+import io.trino.spi.block.SqlRow;
 import io.trino.spi.function.ScalarFunction;
 import io.trino.spi.function.Description;
 import io.trino.spi.function.SqlNullable;
 import io.trino.spi.function.SqlType;
 import io.airlift.slice.Slice;
 import io.trino.spi.type.StandardTypes;
-import java.util.List;
 import java.util.ArrayList;
+import java.util.List;
 
 import static io.trino.spi.type.VarcharType.VARCHAR;
 import static io.trino.spi.type.DoubleType.DOUBLE;
@@ -39,7 +37,7 @@ public class S2GeometryFunctions {
             @SqlType(StandardTypes.INTEGER) long level)
     {
         if (level<0 || level>30) return null;
-        return utf8Slice(S2CellId.fromLatLng(S2LatLng.fromDegrees(lat,lon)).parent(toIntExact(level)).toToken());
+        return S2Helper.idToToken(S2Helper.cellId(lat, lon, toIntExact(level)));
     }
 
     @ScalarFunction("s2_cell")
@@ -53,6 +51,55 @@ public class S2GeometryFunctions {
         return s2Cell(lat,lon,30);
     }
 
+    @ScalarFunction("s2_cell_hierarchy")
+    @Description("Returns cell tokens for latitude,longitude degrees from min_level to max_level")
+    @SqlType("array(varchar)")
+    @SqlNullable
+    public static Block s2CellHierarchy(
+            @SqlType(StandardTypes.DOUBLE) double lat,
+            @SqlType(StandardTypes.DOUBLE) double lon,
+            @SqlType(StandardTypes.INTEGER) long min_level,
+            @SqlType(StandardTypes.INTEGER) long max_level)
+    {
+        if (min_level<0 || max_level>30 || min_level>max_level) return null;
+
+        S2CellWriter output = S2CellWriter.tokens(toIntExact(max_level - min_level + 1), toIntExact(max_level));
+        S2Helper.writeHierarchy(lat, lon, toIntExact(min_level), toIntExact(max_level), output);
+        return output.build();
+    }
+
+    @ScalarFunction("s2_cells")
+    @Description("Returns cell tokens for arrays of latitude,longitude degrees and level")
+    @SqlType("array(varchar)")
+    @SqlNullable
+    public static Block s2Cells(
+            @SqlType("array(double)") Block lats,
+            @SqlType("array(double)") Block lons,
+            @SqlType(StandardTypes.INTEGER) long level)
+    {
+        if (level<0 || level>30) return null;
+
+        BlockBuilder blockBuilder = VARCHAR.createBlockBuilder(null, lats.getPositionCount(), 16);
+        S2Helper.writeCellTokens(lats, lons, toIntExact(level), blockBuilder);
+        return blockBuilder.build();
+    }
+
+    @ScalarFunction("s2_trajectory_cells")
+    @Description("Returns the cell tokens a track of latitude,longitude degrees passes through at a level, in order and without repeats of the previous cell")
+    @SqlType("array(varchar)")
+    @SqlNullable
+    public static Block s2TrajectoryCells(
+            @SqlType("array(double)") Block lats,
+            @SqlType("array(double)") Block lons,
+            @SqlType(StandardTypes.INTEGER) long level)
+    {
+        if (level<0 || level>30) return null;
+
+        S2CellWriter output = S2CellWriter.tokens(lats.getPositionCount(), toIntExact(level));
+        S2Helper.writeTrajectory(lats, lons, toIntExact(level), output);
+        return output.build();
+    }
+
     @ScalarFunction("s2_parent")
     @Description("Returns cell token parent")
     @SqlType(StandardTypes.VARCHAR)
@@ -85,6 +132,20 @@ public class S2GeometryFunctions {
         return S2CellId.fromToken(celltoken.toStringUtf8()).toLatLng().getDistance(S2LatLng.fromDegrees(lat,lon)).radians() * 6371010.0;
     }
 
+    @ScalarFunction("s2_nearest")
+    @Description("Returns the k cell tokens nearest to latitude,longitude degrees with their distance in meter, nearest first")
+    @SqlType("array(row(cell varchar, distance double))")
+    @SqlNullable
+    public static Block s2Nearest(
+            @SqlType(StandardTypes.DOUBLE) double lat,
+            @SqlType(StandardTypes.DOUBLE) double lon,
+            @SqlType("array(varchar)") Block cellTokens,
+            @SqlType(StandardTypes.INTEGER) long k)
+    {
+        if (k<1) return null;
+        return S2NearestCells.fromTokenBlock(cellTokens).nearestTokens(lat, lon, S2NearestCells.checkK(k));
+    }
+
     @ScalarFunction("s2_centroid")
     @Description("Returns the lat,lon point of cell centre")
     @SqlType("array(double)")
@@ -109,10 +170,11 @@ public class S2GeometryFunctions {
     {
         if (level<0 || level>30) return null;
 
-        List<S2CellId> output = new ArrayList<S2CellId>();
-        S2CellId cellid = S2CellId.fromToken(celltoken.toStringUtf8());
-        cellid.getAllNeighbors(toIntExact(level), output);
-        return cellsArrayBlock(output);
+        long cellid = S2Helper.tokenToId(celltoken);
+        if (!S2Helper.isValid(cellid)) return null;
+        S2CellWriter output = S2CellWriter.tokens(S2Helper.allNeighborsCount(cellid, toIntExact(level)), toIntExact(level));
+        S2Helper.writeAllNeighbors(cellid, toIntExact(level), output);
+        return output.build();
     }
 
     @ScalarFunction("s2_neighbors")
@@ -133,8 +195,11 @@ public class S2GeometryFunctions {
     public static Block s2CellChilds(
             @SqlType(StandardTypes.VARCHAR) Slice celltoken)
     {
-        S2CellId cellid = S2CellId.fromToken(celltoken.toStringUtf8());
-        return cellsArrayBlock(S2Helper.getChilds(cellid));
+        long cellid = S2Helper.tokenToId(celltoken);
+        if (!S2Helper.isValid(cellid)) return null;
+        S2CellWriter output = S2CellWriter.tokens(4, Math.min(S2Helper.level(cellid) + 1, 30));
+        S2Helper.writeChildren(cellid, output);
+        return output.build();
     }
 
     @ScalarFunction("s2_radius_cover")
@@ -145,14 +210,28 @@ public class S2GeometryFunctions {
             @SqlType(StandardTypes.VARCHAR) Slice celltoken,
             @SqlType(StandardTypes.DOUBLE) double radius,
             @SqlType(StandardTypes.INTEGER) long level)
+    {
+        return s2CellCover(celltoken, radius, level, S2Helper.DEFAULT_MAX_COVER_CELLS);
+    }
+
+    @ScalarFunction("s2_radius_cover")
+    @Description("Returns cell tokens in a meter radius for a specific level, failing above max_cells cells")
+    @SqlType("array(varchar)")
+    @SqlNullable
+    public static Block s2CellCover(
+            @SqlType(StandardTypes.VARCHAR) Slice celltoken,
+            @SqlType(StandardTypes.DOUBLE) double radius,
+            @SqlType(StandardTypes.INTEGER) long level,
+            @SqlType(StandardTypes.INTEGER) long max_cells)
     {
         if (level<0 || level>30) return null;
+        if (max_cells<1) return null;
 
-        S2CellId cellid = S2CellId.fromToken(celltoken.toStringUtf8());
-        S2Cap circle = S2Cap.fromAxisAngle(cellid.toLatLng().toPoint(), S1Angle.degrees(360 * radius/1000 / (2 * Math.PI * 6371.01)));
-        ArrayList<S2CellId> output = new ArrayList<S2CellId>();
-        S2RegionCoverer.getSimpleCovering(circle, cellid.toLatLng().toPoint(), toIntExact(level) ,output);
-        return cellsArrayBlock(output);
+        long cellid = S2Helper.tokenToId(celltoken);
+        if (!S2Helper.isValid(cellid)) return null;
+        S2CellWriter output = S2CellWriter.tokens(16, toIntExact(level));
+        S2CapCoverer.cover(S2Helper.radiusCap(cellid, radius), toIntExact(level), (int) Math.min(max_cells, Integer.MAX_VALUE), output);
+        return output.build();
     }
 
     @ScalarFunction("s2_parse_wkt")
@@ -162,7 +241,7 @@ public class S2GeometryFunctions {
     public static Slice s2ParseWkt(
             @SqlType(StandardTypes.VARCHAR ) Slice wktPolygon)
     {
-        return utf8Slice(S2Helper.parseWktPolygon(wktPolygon.toStringUtf8()).toString());
+        return utf8Slice(S2PolygonCache.polygon(wktPolygon).toString());
     }
 
     @ScalarFunction("s2_polygon_cover")
@@ -177,7 +256,7 @@ public class S2GeometryFunctions {
         if (min_level<0 || min_level>30) return null;
         if (max_level<0 || max_level>30) return null;
 
-        S2CellUnion cover = S2Helper.cover(S2Helper.parseWktPolygon(wktPolygon.toStringUtf8()),toIntExact(min_level),toIntExact(max_level));
+        S2CellUnion cover = S2PolygonCache.cover(wktPolygon, toIntExact(min_level), toIntExact(max_level));
         if (cover==null) return null;
         return cellsArrayBlock(cover.cellIds());
     }
@@ -195,6 +274,190 @@ public class S2GeometryFunctions {
         return s2PolygonCover(wktPolygon,level,level);
     }
 
+    @ScalarFunction("s2_polygon_cover")
+    @Description("Returns cell tokens cover of wkt polygon with at most max_cells cells when levels allow")
+    @SqlType("array(varchar)")
+    @SqlNullable
+    public static Block s2PolygonCover(
+            @SqlType(StandardTypes.VARCHAR) Slice wktPolygon,
+            @SqlType(StandardTypes.INTEGER) long min_level,
+            @SqlType(StandardTypes.INTEGER) long max_level,
+            @SqlType(StandardTypes.INTEGER) long max_cells)
+    {
+        return s2PolygonCover(wktPolygon, min_level, max_level, max_cells, 1);
+    }
+
+    @ScalarFunction("s2_polygon_cover")
+    @Description("Returns cell tokens cover of wkt polygon with at most max_cells cells when levels allow, using levels min_level + k * level_mod")
+    @SqlType("array(varchar)")
+    @SqlNullable
+    public static Block s2PolygonCover(
+            @SqlType(StandardTypes.VARCHAR) Slice wktPolygon,
+            @SqlType(StandardTypes.INTEGER) long min_level,
+            @SqlType(StandardTypes.INTEGER) long max_level,
+            @SqlType(StandardTypes.INTEGER) long max_cells,
+            @SqlType(StandardTypes.INTEGER) long level_mod)
+    {
+        if (min_level<0 || min_level>30) return null;
+        if (max_level<0 || max_level>30) return null;
+        if (max_cells<1 || level_mod<1 || level_mod>3) return null;
+
+        S2CellUnion cover = S2PolygonCache.cover(wktPolygon, toIntExact(min_level), toIntExact(max_level), (int) Math.min(max_cells, Integer.MAX_VALUE), toIntExact(level_mod));
+        if (cover==null) return null;
+        return cellsArrayBlock(cover.cellIds());
+    }
+
+    @ScalarFunction("s2_line_cover")
+    @Description("Returns cell tokens at a level a wkt linestring passes through")
+    @SqlType("array(varchar)")
+    @SqlNullable
+    public static Block s2LineCover(
+            @SqlType(StandardTypes.VARCHAR) Slice wktLineString,
+            @SqlType(StandardTypes.INTEGER) long level)
+    {
+        if (level<0 || level>30) return null;
+
+        S2CellUnion cover = S2Helper.lineCover(S2Helper.parseWktLineString(wktLineString), toIntExact(level));
+        if (cover==null) return null;
+        return cellsArrayBlock(cover.cellIds());
+    }
+
+    @ScalarFunction("s2_polygon_interior_cover")
+    @Description("Returns cell tokens entirely inside a wkt polygon at a level")
+    @SqlType("array(varchar)")
+    @SqlNullable
+    public static Block s2PolygonInteriorCover(
+            @SqlType(StandardTypes.VARCHAR) Slice wktPolygon,
+            @SqlType(StandardTypes.INTEGER) long level)
+    {
+        return s2PolygonInteriorCover(wktPolygon, level, level, Integer.MAX_VALUE, 1);
+    }
+
+    @ScalarFunction("s2_polygon_interior_cover")
+    @Description("Returns cell tokens entirely inside a wkt polygon, at most max_cells cells")
+    @SqlType("array(varchar)")
+    @SqlNullable
+    public static Block s2PolygonInteriorCover(
+            @SqlType(StandardTypes.VARCHAR) Slice wktPolygon,
+            @SqlType(StandardTypes.INTEGER) long min_level,
+            @SqlType(StandardTypes.INTEGER) long max_level,
+            @SqlType(StandardTypes.INTEGER) long max_cells)
+    {
+        return s2PolygonInteriorCover(wktPolygon, min_level, max_level, max_cells, 1);
+    }
+
+    @ScalarFunction("s2_polygon_interior_cover")
+    @Description("Returns cell tokens entirely inside a wkt polygon, at most max_cells cells, using levels min_level + k * level_mod")
+    @SqlType("array(varchar)")
+    @SqlNullable
+    public static Block s2PolygonInteriorCover(
+            @SqlType(StandardTypes.VARCHAR) Slice wktPolygon,
+            @SqlType(StandardTypes.INTEGER) long min_level,
+            @SqlType(StandardTypes.INTEGER) long max_level,
+            @SqlType(StandardTypes.INTEGER) long max_cells,
+            @SqlType(StandardTypes.INTEGER) long level_mod)
+    {
+        if (min_level<0 || min_level>30) return null;
+        if (max_level<0 || max_level>30) return null;
+        if (max_cells<1 || level_mod<1 || level_mod>3) return null;
+
+        S2CellUnion cover = S2PolygonCache.interiorCover(wktPolygon, toIntExact(min_level), toIntExact(max_level), (int) Math.min(max_cells, Integer.MAX_VALUE), toIntExact(level_mod));
+        if (cover==null) return null;
+        return cellsArrayBlock(cover.cellIds());
+    }
+
+    @ScalarFunction("s2_cell_range_min")
+    @Description("Returns the smallest leaf cell id inside a cell token")
+    @SqlType(StandardTypes.BIGINT)
+    @SqlNullable
+    public static Long s2CellRangeMin(@SqlType(StandardTypes.VARCHAR) Slice celltoken)
+    {
+        return S2CellIdFunctions.s2CellRangeMin(S2Helper.tokenToId(celltoken));
+    }
+
+    @ScalarFunction("s2_cell_range_max")
+    @Description("Returns the largest leaf cell id inside a cell token")
+    @SqlType(StandardTypes.BIGINT)
+    @SqlNullable
+    public static Long s2CellRangeMax(@SqlType(StandardTypes.VARCHAR) Slice celltoken)
+    {
+        return S2CellIdFunctions.s2CellRangeMax(S2Helper.tokenToId(celltoken));
+    }
+
+    @ScalarFunction("s2_polygon_cover_bounds")
+    @Description("Returns the cell id span and the merged cell id ranges of the wkt polygon cover for a specific level, in BIGINT order")
+    @SqlType("row(range_min bigint, range_max bigint, ranges array(row(range_min bigint, range_max bigint)))")
+    @SqlNullable
+    public static SqlRow s2PolygonCoverBounds(
+            @SqlType(StandardTypes.VARCHAR) Slice wktPolygon,
+            @SqlType(StandardTypes.INTEGER) long level)
+    {
+        if (level<0 || level>30) return null;
+
+        return coverBounds(S2PolygonCache.cover(wktPolygon, toIntExact(level)));
+    }
+
+    @ScalarFunction("s2_intersects")
+    @Description("Returns TRUE if two wkt polygons have any point in common")
+    @SqlType(StandardTypes.BOOLEAN)
+    public static boolean s2Intersects(
+            @SqlType(StandardTypes.VARCHAR) Slice wktPolygonA,
+            @SqlType(StandardTypes.VARCHAR) Slice wktPolygonB)
+    {
+        return S2PolygonCache.prepared(wktPolygonA).intersects(S2PolygonCache.prepared(wktPolygonB));
+    }
+
+    @ScalarFunction("s2_intersection_area")
+    @Description("Returns the area in square meters of the intersection of two wkt polygons")
+    @SqlType(StandardTypes.DOUBLE)
+    @SqlNullable
+    public static Double s2IntersectionArea(
+            @SqlType(StandardTypes.VARCHAR) Slice wktPolygonA,
+            @SqlType(StandardTypes.VARCHAR) Slice wktPolygonB)
+    {
+        return intersectionArea(S2PolygonCache.prepared(wktPolygonA), S2PolygonCache.prepared(wktPolygonB));
+    }
+
+    @ScalarFunction("s2_area")
+    @Description("Returns the area in square meters of a wkt polygon")
+    @SqlType(StandardTypes.DOUBLE)
+    @SqlNullable
+    public static Double s2Area(@SqlType(StandardTypes.VARCHAR) Slice wktPolygon)
+    {
+        return area(S2PolygonCache.prepared(wktPolygon));
+    }
+
+    // null for an empty or invalid polygon, like the cover functions
+    static Double area(S2PreparedPolygon prepared)
+    {
+        if (prepared.isEmpty()) return null;
+        return squareMeters(prepared.area());
+    }
+
+    static Double intersectionArea(S2PreparedPolygon a, S2PreparedPolygon b)
+    {
+        if (a.isEmpty() || b.isEmpty()) return null;
+        return squareMeters(a.intersectionArea(b));
+    }
+
+    @ScalarFunction("s2_union_cover")
+    @Description("Returns the normalized union of the cell token covers of wkt polygons for a specific level")
+    @SqlType("array(varchar)")
+    @SqlNullable
+    public static Block s2UnionCover(
+            @SqlType("array(varchar)") Block wktPolygons,
+            @SqlType(StandardTypes.INTEGER) long level)
+    {
+        if (level<0 || level>30) return null;
+
+        S2CellIdUnion union = S2PolygonCache.unionCover(wktPolygons, toIntExact(level));
+        S2CellWriter output = S2CellWriter.tokens(union.size(), toIntExact(level));
+        for (int i = 0; i < union.size(); i++) {
+            output.write(union.cellId(i));
+        }
+        return output.build();
+    }
+
     @ScalarFunction("s2_within")
     @Description("Returns TRUE if a cell token is in coverage of a wkt polygon")
     @SqlType(StandardTypes.BOOLEAN)
@@ -206,7 +469,7 @@ public class S2GeometryFunctions {
     {
         if (level<0 || level>30) return null;
 
-        S2CellUnion cover = S2Helper.cover(S2Helper.parseWktPolygon(wktPolygon.toStringUtf8()), toIntExact(level));
+        S2CellUnion cover = S2PolygonCache.cover(wktPolygon, toIntExact(level));
         if (cover==null) return false;
         S2CellId cellid = S2CellId.fromToken(celltoken.toStringUtf8());
 
@@ -225,6 +488,27 @@ public class S2GeometryFunctions {
         return s2Within(cellToken, wktPolygon, level);
     }
 
+    @ScalarFunction("s2_polygon_contains_point")
+    @Description("Returns TRUE if a wkt polygon contains the point at latitude,longitude degrees")
+    @SqlType(StandardTypes.BOOLEAN)
+    public static boolean s2PolygonContainsPoint(
+            @SqlType(StandardTypes.VARCHAR) Slice wktPolygon,
+            @SqlType(StandardTypes.DOUBLE) double lat,
+            @SqlType(StandardTypes.DOUBLE) double lon)
+    {
+        return S2PolygonCache.prepared(wktPolygon).contains(lat, lon);
+    }
+
+    @ScalarFunction("s2_polygon_contains_point")
+    @Description("Returns TRUE if a wkt polygon contains the center of a cell token")
+    @SqlType(StandardTypes.BOOLEAN)
+    public static boolean s2PolygonContainsPoint(
+            @SqlType(StandardTypes.VARCHAR) Slice wktPolygon,
+            @SqlType(StandardTypes.VARCHAR) Slice cellToken)
+    {
+        return S2PolygonCache.prepared(wktPolygon).containsCenter(S2Helper.tokenToId(cellToken));
+    }
+
     @ScalarFunction("s2_within")
     @Description("Returns TRUE if a cell token is in coverage of cells list")
     @SqlType(StandardTypes.BOOLEAN)
@@ -233,16 +517,7 @@ public class S2GeometryFunctions {
             @SqlType(StandardTypes.VARCHAR) Slice cellToken,
             @SqlType("array(varchar)") Block cellTokens)
     {
-        try {
-            ArrayList<S2CellId> cellids = new ArrayList<S2CellId>();
-            for (int i = 0; i < cellTokens.getPositionCount(); i++) {
-                cellids.add(S2CellId.fromToken(VARCHAR.getSlice(cellTokens, i).toStringUtf8()));
-            }
-            S2CellUnion cellUnion = new S2CellUnion();
-            cellUnion.initFromCellIds(cellids);
-
-            return cellUnion.contains(S2CellId.fromToken(cellToken.toStringUtf8()));
-        } catch (Exception e) {return null;}
+        return S2CellRanges.fromTokenBlock(cellTokens).contains(S2Helper.tokenToId(cellToken));
     }
 
     @ScalarFunction("s2_contains")
@@ -278,11 +553,28 @@ public class S2GeometryFunctions {
         return s2Within(cellTokenB,cellTokenA);
     }
 
+    public static SqlRow coverBounds(S2CellUnion cover) {
+        if (cover==null) return null;
+        ArrayList<S2CellId> cells = cover.cellIds();
+        long[] ids = new long[cells.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = cells.get(i).id();
+        }
+        return S2CellRanges.fromCellIds(ids, ids.length).toBoundsRow();
+    }
+
+    public static double squareMeters(double steradians) {
+        return steradians * S2NearestCells.EARTH_RADIUS_METERS * S2NearestCells.EARTH_RADIUS_METERS;
+    }
+
     public static Block cellsArrayBlock(List<S2CellId> cells) {
-        BlockBuilder blockBuilder = VARCHAR.createBlockBuilder(null, cells.size(), 16);
+        long start = S2Metrics.CELLS_ARRAY.start();
+        S2CellWriter output = S2CellWriter.tokens(cells.size(), S2CellId.MAX_LEVEL);
         for (S2CellId cell: cells)
-            VARCHAR.writeSlice(blockBuilder, utf8Slice(cell.toToken()));
-        return blockBuilder.build();
-
+            output.write(cell.id());
+        Block block = output.build();
+        S2Metrics.CELLS_ARRAY.end(start);
+        S2Metrics.cellsArrayCells(cells.size());
+        return block;
     }
 }
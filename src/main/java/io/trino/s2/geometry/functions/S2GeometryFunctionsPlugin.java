@@ -4,8 +4,10 @@
 package io.trino.s2.geometry.functions;
 
 import io.trino.spi.Plugin;
+import io.trino.spi.connector.ConnectorFactory;
 import com.google.common.collect.ImmutableSet;
 
+import java.util.List;
 import java.util.Set;
 
 public class S2GeometryFunctionsPlugin
@@ -14,8 +16,22 @@ public class S2GeometryFunctionsPlugin
     @Override
     public Set<Class<?>> getFunctions()
     {
+        S2Metrics.register();
         return ImmutableSet.<Class<?>>builder()
                 .add(S2GeometryFunctions.class)
+                .add(S2CellIdFunctions.class)
+                .add(S2EncodedPolygonFunctions.class)
+                .add(S2CoverAggregation.class)
+                .add(S2TokenCoverAggregation.class)
+                .add(S2NearestAggregation.class)
+                .add(S2TokenNearestAggregation.class)
+                .add(S2CellHierarchyAggregation.class)
                 .build();
     }
+
+    @Override
+    public Iterable<ConnectorFactory> getConnectorFactories()
+    {
+        return List.of(new S2ConnectorFactory());
+    }
 }
@@ -1,19 +1,217 @@
 package io.trino.s2.geometry.functions;
 
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
 import com.google.common.geometry.*;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.regex.Pattern;
 
+import io.airlift.slice.DynamicSliceOutput;
+import io.airlift.slice.Slice;
+import io.airlift.slice.SliceInput;
+import io.airlift.slice.Slices;
 import io.trino.spi.StandardErrorCode;
 import io.trino.spi.TrinoException;
+import io.trino.spi.block.Block;
+import io.trino.spi.block.BlockBuilder;
+
+import static io.trino.spi.type.BigintType.BIGINT;
+import static io.trino.spi.type.DoubleType.DOUBLE;
+import static io.trino.spi.type.VarcharType.VARCHAR;
 
 /**
  * Created by guycohen on 14/06/2017.
  */
 public class S2Helper {
 
+    // s2_radius_cover fails rather than build a larger array
+    public static final int DEFAULT_MAX_COVER_CELLS = 1_000_000;
+
+    // largest array the JVM allocates
+    private static final int MAX_ARRAY_SIZE = Integer.MAX_VALUE - 8;
+
+    private static final int MAX_COVERERS = 100;
+
+    private static final LoadingCache<CovererKey, S2RegionCoverer> COVERERS = CacheBuilder.newBuilder()
+            .maximumSize(MAX_COVERERS)
+            .build(CacheLoader.from(key -> S2RegionCoverer.builder()
+                    .setMinLevel(key.minLevel())
+                    .setMaxLevel(key.maxLevel())
+                    .setMaxCells(key.maxCells())
+                    .setLevelMod(key.levelMod())
+                    .build()));
+
+    private static final byte[] HEX_DIGITS = "0123456789abcdef".getBytes();
+
+    // Hilbert curve lookups of S2CellId.fromFaceIJ and toIJOrientation, 4 bits of i and j at a time
+    private static final int LOOKUP_BITS = 4;
+    private static final int SWAP_MASK = 0x01;
+    private static final int INVERT_MASK = 0x02;
+    private static final int[][] POS_TO_IJ = {{0, 1, 3, 2}, {0, 2, 3, 1}, {3, 2, 0, 1}, {3, 1, 0, 2}};
+    private static final int[] POS_TO_ORIENTATION = {SWAP_MASK, 0, 0, INVERT_MASK | SWAP_MASK};
+    private static final int[] LOOKUP_POS = new int[1 << (2 * LOOKUP_BITS + 2)];
+    private static final int[] LOOKUP_IJ = new int[1 << (2 * LOOKUP_BITS + 2)];
+
+    static {
+        for (int orientation = 0; orientation < 4; orientation++) {
+            initLookupCell(0, 0, 0, orientation, 0, orientation);
+        }
+    }
+
+    private static void initLookupCell(int level, int i, int j, int origOrientation, int pos, int orientation) {
+        if (level == LOOKUP_BITS) {
+            int ij = (i << LOOKUP_BITS) + j;
+            LOOKUP_POS[(ij << 2) + origOrientation] = (pos << 2) + orientation;
+            LOOKUP_IJ[(pos << 2) + origOrientation] = (ij << 2) + orientation;
+            return;
+        }
+        level++;
+        i <<= 1;
+        j <<= 1;
+        pos <<= 2;
+        int[] r = POS_TO_IJ[orientation];
+        for (int child = 0; child < 4; child++) {
+            initLookupCell(level, i + (r[child] >> 1), j + (r[child] & 1), origOrientation, pos + child, orientation ^ POS_TO_ORIENTATION[child]);
+        }
+    }
+
+    public static S2Polygon parseWktPolygon(Slice polygon) {
+        long start = S2Metrics.PARSE_WKT.start();
+        try {
+            return assemblePolygon(polygon);
+        }
+        finally {
+            S2Metrics.PARSE_WKT.end(start);
+        }
+    }
+
+    private static S2Polygon assemblePolygon(Slice polygon) {
+        try {
+            List<S2Loop> loops = S2WktParser.parsePolygonLoops(polygon);
+            if (loops.isEmpty()) {
+                return new S2Polygon();
+            }
+
+            S2PolygonBuilder polyBuilder = new S2PolygonBuilder();
+            for (S2Loop loop : loops) {
+                if (!loop.isValid())
+                { S2Error error = new S2Error();
+                    loop.findValidationError(error);
+                    throw new TrinoException(StandardErrorCode.GENERIC_INTERNAL_ERROR,error.text() + " for " + polygon.toStringUtf8());
+                }
+                polyBuilder.addLoop(loop);
+            }
+
+            return polyBuilder.assemblePolygon();
+        }
+        catch (Exception e) {
+            return new S2Polygon();
+        }
+    }
+
+    /**
+     * Parses a wkt LINESTRING, malformed input gives an empty polyline like parseWktPolygon.
+     */
+    public static S2Polyline parseWktLineString(Slice lineString) {
+        long start = S2Metrics.PARSE_WKT.start();
+        try {
+            return new S2Polyline(S2WktParser.parseLineString(lineString));
+        }
+        catch (IllegalArgumentException e) {
+            return new S2Polyline(new ArrayList<S2Point>());
+        }
+        finally {
+            S2Metrics.PARSE_WKT.end(start);
+        }
+    }
+
+    /**
+     * Lossless S2Polygon encoding, read back by decodePolygon.
+     */
+    public static Slice encodePolygon(S2Polygon polygon) {
+        DynamicSliceOutput output = new DynamicSliceOutput(64);
+        try {
+            polygon.encode(output);
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        Slice encoded = output.slice();
+        // checked once here so that every encoding this writes is read back by decodePolygon
+        if (!hasBoundedCounts(encoded)) {
+            throw new TrinoException(StandardErrorCode.GENERIC_INTERNAL_ERROR, "Unexpected polygon encoding version " + encoded.getByte(0));
+        }
+        return encoded;
+    }
+
+    // Reads straight from the slice memory, malformed input gives an empty polygon like parseWktPolygon
+    public static S2Polygon decodePolygon(Slice encoded) {
+        try {
+            if (!hasBoundedCounts(encoded)) {
+                return new S2Polygon();
+            }
+            return S2Polygon.decode(encoded.getInput());
+        }
+        catch (Exception e) {
+            return new S2Polygon();
+        }
+    }
+
+    // S2Polygon.decode presizes lists from the loop and vertex counts it reads, so a crafted count
+    // fails with OutOfMemoryError rather than an exception. Loops and vertices take at least a byte
+    // each, so the loop count and the vertex count of the first loop, read from the headers of the
+    // two versions S2Polygon.encode writes, cannot exceed the length. decode fails on the rest
+    private static boolean hasBoundedCounts(Slice encoded) {
+        int length = encoded.length();
+        SliceInput input = encoded.getInput();
+        if (!input.isReadable()) return false;
+        byte version = input.readByte();
+        if (version == 1) {
+            // owns loops and has holes flags, loop count, first loop version and vertex count
+            if (length < 7) return false;
+            input.skipBytes(2);
+            int loops = input.readInt();
+            if (loops == 0) return true;
+            if (loops < 0 || loops > length || length < 12) return false;
+            input.skipBytes(1);
+            int vertices = input.readInt();
+            return vertices >= 0 && vertices <= length;
+        }
+        if (version == 4) {
+            // snap level, loop count, first loop vertex count
+            if (!input.isReadable()) return false;
+            input.skipBytes(1);
+            long loops = readVarint(input);
+            if (loops == 0) return true;
+            long vertices = readVarint(input);
+            return loops > 0 && loops <= length && vertices >= 0 && vertices <= length;
+        }
+        return false;
+    }
+
+    // unsigned LEB128 varint, -1 when it is truncated or longer than 10 bytes
+    private static long readVarint(SliceInput input) {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            if (!input.isReadable()) return -1;
+            byte b = input.readByte();
+            value |= (long) (b & 0x7f) << shift;
+            if (b >= 0) return value;
+        }
+        return -1;
+    }
+
     public static S2Polygon parseWktPolygon(String polygon) {
+        return parseWktPolygon(Slices.utf8Slice(polygon));
+    }
+
+    // Previous regex based parser, single POLYGON shell only. Kept to compare against in tests
+    static S2Polygon parseWktPolygonRegex(String polygon) {
         String start_pattern = "^(\\s)*[Pp][Oo][Ll][Yy][Gg][Oo][Nn](\\s)*[(](\\s)*[(]";
         String end_pattern = "[)](\\s)*[)](\\s)*$";
 
@@ -58,22 +256,532 @@ public class S2Helper {
     }
 
     public static S2CellUnion cover(S2Polygon polygon, int minLevel, int maxLevel) {
-        if (polygon == null || polygon.numLoops()==0) return null;
-        S2RegionCoverer coverer = S2RegionCoverer.builder()
-                .setMinLevel(minLevel)
-                .setMaxLevel(maxLevel)
-                .build();
-        return coverer.getCovering(polygon);
+        return cover(polygon, minLevel, maxLevel, S2RegionCoverer.DEFAULT.maxCells(), 1);
     }
 
     public static S2CellUnion cover(S2Polygon polygon, int level) {
         return cover(polygon,level,level);
     }
 
-    public static List<S2CellId> getChilds(S2CellId cellid) {
-        List<S2CellId> childs = new ArrayList<S2CellId>();
-        for (S2CellId c = cellid.childBegin(); !c.equals(cellid.childEnd()); c = c.next())
-            childs.add(c);
-        return childs;
+    public static S2CellUnion cover(S2Polygon polygon, int minLevel, int maxLevel, int maxCells, int levelMod) {
+        return cover(polygon, minLevel, maxLevel, maxCells, levelMod, false);
+    }
+
+    /**
+     * Cells entirely inside the polygon, null for an empty or invalid polygon.
+     */
+    public static S2CellUnion interiorCover(S2Polygon polygon, int minLevel, int maxLevel, int maxCells, int levelMod) {
+        return cover(polygon, minLevel, maxLevel, maxCells, levelMod, true);
+    }
+
+    private static S2CellUnion cover(S2Polygon polygon, int minLevel, int maxLevel, int maxCells, int levelMod, boolean interior) {
+        if (polygon == null || polygon.numLoops()==0) return null;
+        long start = S2Metrics.COVER.start();
+        S2CellUnion cover = S2ParallelCoverer.cover(polygon, minLevel, maxLevel, maxCells, levelMod, interior);
+        S2Metrics.COVER.end(start);
+        S2Metrics.coverCells(cover.size());
+        return cover;
+    }
+
+    /**
+     * Cells at level the line passes through, null for an empty or invalid line string.
+     */
+    public static S2CellUnion lineCover(S2Polyline line, int level) {
+        if (line == null || line.numVertices() == 0) return null;
+        // a cell holds no more of the line than its diagonal
+        S2MemoryBudget.checkBudget("Line cover",
+                (long) Math.ceil(line.getArclengthAngle().radians() / S2Projections.PROJ.maxDiag.getValue(level)));
+        long start = S2Metrics.COVER.start();
+        ArrayList<S2CellId> cells = new ArrayList<S2CellId>();
+        coverer(level, level, S2RegionCoverer.DEFAULT.maxCells(), 1).getCovering(line, cells);
+        // sorted cells at level, normalizing would merge 4 siblings into their parent
+        S2CellUnion cover = new S2CellUnion();
+        cover.initRawSwap(cells);
+        S2Metrics.COVER.end(start);
+        S2Metrics.coverCells(cover.size());
+        return cover;
+    }
+
+    // S2RegionCoverer is immutable, so one instance per configuration is shared by all threads
+    public static S2RegionCoverer coverer(int minLevel, int maxLevel, int maxCells, int levelMod) {
+        return COVERERS.getUnchecked(new CovererKey(minLevel, maxLevel, maxCells, levelMod));
+    }
+
+    // Cell id arithmetic on the raw 64 bit id, mirrors S2CellId without allocating it
+
+    public static long tokenToId(Slice token) {
+        int length = token.length();
+        if (length == 0) {
+            throw new TrinoException(StandardErrorCode.INVALID_FUNCTION_ARGUMENT, "Empty cell token");
+        }
+        if (length > 16 || (length == 1 && (token.getByte(0) == 'X' || token.getByte(0) == 'x'))) {
+            return 0L;
+        }
+        long id = 0;
+        for (int i = 0; i < length; i++) {
+            int digit = Character.digit(token.getByte(i), 16);
+            if (digit < 0) {
+                throw new TrinoException(StandardErrorCode.INVALID_FUNCTION_ARGUMENT, "Invalid cell token: " + token.toStringUtf8());
+            }
+            id = (id << 4) | digit;
+        }
+        return id << (4 * (16 - length));
+    }
+
+    public static Slice idToToken(long id) {
+        byte[] token = new byte[16];
+        return Slices.wrappedBuffer(token, 0, writeToken(id, token));
+    }
+
+    // writes the token of id into buffer, which must hold 16 bytes, and returns its length
+    public static int writeToken(long id, byte[] buffer) {
+        if (id == 0) {
+            buffer[0] = 'X';
+            return 1;
+        }
+        int length = 16 - (Long.numberOfTrailingZeros(id) >>> 2);
+        for (int i = 0; i < length; i++) {
+            buffer[i] = HEX_DIGITS[(int) (id >>> (60 - 4 * i)) & 0xf];
+        }
+        return length;
+    }
+
+    public static boolean isValid(long id) {
+        return (id >>> S2CellId.POS_BITS) < S2CellId.NUM_FACES && (lowestOnBit(id) & 0x1555555555555555L) != 0;
+    }
+
+    public static long lowestOnBit(long id) {
+        return id & -id;
+    }
+
+    public static long lowestOnBitForLevel(int level) {
+        return 1L << (2 * (S2CellId.MAX_LEVEL - level));
+    }
+
+    public static int level(long id) {
+        return S2CellId.MAX_LEVEL - (Long.numberOfTrailingZeros(id) >> 1);
+    }
+
+    public static long parent(long id) {
+        long lsb = lowestOnBit(id) << 2;
+        return (id & -lsb) | lsb;
+    }
+
+    public static long parent(long id, int level) {
+        long lsb = lowestOnBitForLevel(level);
+        return (id & -lsb) | lsb;
+    }
+
+    public static long rangeMin(long id) {
+        return id - (lowestOnBit(id) - 1);
+    }
+
+    public static long rangeMax(long id) {
+        return id + (lowestOnBit(id) - 1);
+    }
+
+    public static boolean contains(long id, long other) {
+        return Long.compareUnsigned(other, rangeMin(id)) >= 0 && Long.compareUnsigned(other, rangeMax(id)) <= 0;
+    }
+
+    /**
+     * Cap of radius meters around the center of a cell.
+     */
+    public static S2Cap radiusCap(long id, double radius) {
+        return S2Cap.fromAxisAngle(new S2CellId(id).toLatLng().toPoint(), S1Angle.degrees(360 * radius/1000 / (2 * Math.PI * 6371.01)));
+    }
+
+    public static int face(long id) {
+        return (int) (id >>> S2CellId.POS_BITS);
+    }
+
+    public static int sizeIJ(int level) {
+        return 1 << (S2CellId.MAX_LEVEL - level);
+    }
+
+    // length of the token of any cell at level
+    public static int tokenLength(int level) {
+        return 16 - ((S2CellId.MAX_LEVEL - level) >> 1);
+    }
+
+    /**
+     * Writes the 4 children of the cell in id order, nothing for a leaf cell.
+     */
+    public static void writeChildren(long id, S2CellWriter output) {
+        if (isLeaf(id)) return;
+        long lsb = lowestOnBit(id) >>> 2;
+        for (int k = 0; k < 4; k++) {
+            output.write(id + (2 * k - 3) * lsb);
+        }
+    }
+
+    /**
+     * Writes the cells containing latitude,longitude degrees from minLevel to maxLevel,
+     * projecting the point once and masking the leaf id for every level.
+     */
+    public static void writeHierarchy(double lat, double lon, int minLevel, int maxLevel, S2CellWriter output) {
+        long leaf = cellId(lat, lon, S2CellId.MAX_LEVEL);
+        for (int level = minLevel; level <= maxLevel; level++) {
+            output.write(parent(leaf, level));
+        }
+    }
+
+    /**
+     * Writes the cells at level a track passes through in order, each run of one cell once.
+     * Consecutive samples are joined by geodesic segments, samples with a null coordinate are skipped.
+     */
+    public static void writeTrajectory(Block lats, Block lons, int level, S2CellWriter output) {
+        checkSameSize(lats, lons);
+        S2Point previous = null;
+        long last = 0;
+        for (int i = 0; i < lats.getPositionCount(); i++) {
+            if (lats.isNull(i) || lons.isNull(i)) continue;
+            double lat = DOUBLE.getDouble(lats, i);
+            double lon = DOUBLE.getDouble(lons, i);
+            long cell = cellId(lat, lon, level);
+            S2Point point = S2LatLng.fromDegrees(lat, lon).toPoint();
+            if (previous == null) {
+                output.write(cell);
+            }
+            else if (cell != last) {
+                writeSegment(previous, point, last, cell, output);
+            }
+            previous = point;
+            last = cell;
+        }
+    }
+
+    // Cells are convex and bounded by geodesics, so the segment a-b leaves every cell it
+    // enters through a single edge and the walk goes from edge neighbor to edge neighbor
+    private static void writeSegment(S2Point a, S2Point b, long from, long to, S2CellWriter output) {
+        long cell = from;
+        while (cell != to) {
+            int edge = exitEdge(new S2Cell(new S2CellId(cell)), a, b);
+            // b lies on the boundary of the cell
+            if (edge < 0) break;
+            cell = edgeNeighbor(cell, edge);
+            output.write(cell);
+            S2MemoryBudget.checkBudget("Trajectory", output.count());
+        }
+        if (cell != to) {
+            output.write(to);
+        }
+    }
+
+    // edge of the cell the segment a-b crosses with b on its outer side, -1 if there is none
+    private static int exitEdge(S2Cell cell, S2Point a, S2Point b) {
+        for (int k = 0; k < 4; k++) {
+            // getEdgeRaw is the inward normal of the edge from vertex k to k + 1
+            if (b.dotProd(cell.getEdgeRaw(k)) < 0
+                    && S2EdgeUtil.robustCrossing(a, b, cell.getVertex(k), cell.getVertex((k + 1) & 3)) >= 0) {
+                return k;
+            }
+        }
+        return -1;
+    }
+
+    public static boolean isLeaf(long id) {
+        return (id & 1) != 0;
+    }
+
+    /**
+     * Allocation free S2CellId.getEdgeNeighbors()[edge], edges numbered like S2Cell.getEdge.
+     */
+    public static long edgeNeighbor(long id, int edge) {
+        int level = level(id);
+        int size = sizeIJ(level);
+        int face = face(id);
+        long ij = toIJ(id);
+        int i = (int) (ij >>> 32) & -size;
+        int j = (int) ij & -size;
+        switch (edge) {
+            case 0: return parent(fromFaceIJSame(face, i, j - size, j - size >= 0), level);
+            case 1: return parent(fromFaceIJSame(face, i + size, j, i + size < S2CellId.MAX_SIZE), level);
+            case 2: return parent(fromFaceIJSame(face, i, j + size, j + size < S2CellId.MAX_SIZE), level);
+            default: return parent(fromFaceIJSame(face, i - size, j, i - size >= 0), level);
+        }
+    }
+
+    // Allocation free S2CellId.getAllNeighbors, in the same order and with the same duplicates
+
+    public static void writeAllNeighbors(long id, int level, S2CellWriter output) {
+        int face = face(id);
+        int size = sizeIJ(level(id));
+        long ij = toIJ(id);
+        int i = (int) (ij >>> 32) & -size;
+        int j = (int) ij & -size;
+        int nbrSize = sizeIJ(level);
+        // the loop test is at the end to avoid 32 bit overflow
+        for (int k = -nbrSize; ; k += nbrSize) {
+            boolean sameFace;
+            if (k < 0) {
+                sameFace = j + k >= 0;
+            }
+            else if (k >= size) {
+                sameFace = j + k < S2CellId.MAX_SIZE;
+            }
+            else {
+                sameFace = true;
+                output.write(parent(fromFaceIJSame(face, i + k, j - nbrSize, j - size >= 0), level));
+                output.write(parent(fromFaceIJSame(face, i + k, j + size, j + size < S2CellId.MAX_SIZE), level));
+            }
+            output.write(parent(fromFaceIJSame(face, i - nbrSize, j + k, sameFace && i - size >= 0), level));
+            output.write(parent(fromFaceIJSame(face, i + size, j + k, sameFace && i + size < S2CellId.MAX_SIZE), level));
+            if (k >= size) break;
+        }
+    }
+
+    // Number of ids writeAllNeighbors writes, up to 4 + 2^32 for a face cell and leaf neighbors.
+    // Counts no array can hold are invalid, smaller ones still have to fit the memory budget
+    public static int allNeighborsCount(long id, int level) {
+        int size = sizeIJ(level(id));
+        int nbrSize = sizeIJ(level);
+        long count = 4 + 4 * ((size - 1L) / nbrSize + 1);
+        if (count > MAX_ARRAY_SIZE) {
+            throw new TrinoException(StandardErrorCode.INVALID_FUNCTION_ARGUMENT, "Cell has " + count + " neighbors at level " + level + ", more than an array holds");
+        }
+        S2MemoryBudget.checkBudget("Neighbors", count);
+        return (int) count;
+    }
+
+    /**
+     * Leaf cell coordinates of S2CellId.toIJOrientation packed as i << 32 | j.
+     */
+    public static long toIJ(long id) {
+        int bits = face(id) & SWAP_MASK;
+        int i = 0;
+        int j = 0;
+        for (int k = 7; k >= 0; k--) {
+            int nbits = k == 7 ? S2CellId.MAX_LEVEL - 7 * LOOKUP_BITS : LOOKUP_BITS;
+            bits += ((int) (id >>> (k * 2 * LOOKUP_BITS + 1)) & ((1 << (2 * nbits)) - 1)) << 2;
+            bits = LOOKUP_IJ[bits];
+            i += (bits >> (LOOKUP_BITS + 2)) << (k * LOOKUP_BITS);
+            j += ((bits >> 2) & ((1 << LOOKUP_BITS) - 1)) << (k * LOOKUP_BITS);
+            bits &= (SWAP_MASK | INVERT_MASK);
+        }
+        return ((long) i << 32) | j;
+    }
+
+    public static long fromFaceIJSame(int face, int i, int j, boolean sameFace) {
+        return sameFace ? fromFaceIJ(face, i, j) : fromFaceIJWrap(face, i, j);
+    }
+
+    // leaf cell on the adjacent face for i,j just beyond the boundary of face
+    private static long fromFaceIJWrap(int face, int i, int j) {
+        i = Math.max(-1, Math.min(S2CellId.MAX_SIZE, i));
+        j = Math.max(-1, Math.min(S2CellId.MAX_SIZE, j));
+        double limit = 1 + Math.ulp(1.0);
+        double scale = 1.0 / S2CellId.MAX_SIZE;
+        double u = Math.max(-limit, Math.min(limit, scale * ((i << 1) + 1 - S2CellId.MAX_SIZE)));
+        double v = Math.max(-limit, Math.min(limit, scale * ((j << 1) + 1 - S2CellId.MAX_SIZE)));
+        double x = faceUvToX(face, u, v);
+        double y = faceUvToY(face, u, v);
+        double z = faceUvToZ(face, u, v);
+        face = xyzToFace(x, y, z);
+        return fromFaceIJ(face, stToIJ(0.5 * (1 + xyzToU(face, x, y, z))), stToIJ(0.5 * (1 + xyzToV(face, x, y, z))));
+    }
+
+    /**
+     * Normalizes the first count ids in place like S2CellUnion.normalize: sorted, without
+     * cells contained in other cells and with every 4 siblings replaced by their parent.
+     * Invalid ids are dropped. Returns the number of ids left.
+     */
+    public static int normalize(long[] ids, int count) {
+        int valid = 0;
+        for (int i = 0; i < count; i++) {
+            if (isValid(ids[i])) {
+                // flip the sign bit so signed order is the unsigned cell id order
+                ids[valid++] = ids[i] ^ Long.MIN_VALUE;
+            }
+        }
+        Arrays.sort(ids, 0, valid);
+
+        int size = 0;
+        for (int i = 0; i < valid; i++) {
+            long id = ids[i] ^ Long.MIN_VALUE;
+            if (size > 0 && contains(ids[size - 1], id)) continue;
+            while (size > 0 && contains(id, ids[size - 1])) size--;
+            while (size >= 3) {
+                // the last 3 cells and id are siblings when they share the parent bits
+                if ((ids[size - 3] ^ ids[size - 2] ^ ids[size - 1]) != id) break;
+                long mask = lowestOnBit(id) << 1;
+                mask = ~(mask + (mask << 1));
+                long masked = id & mask;
+                if ((ids[size - 3] & mask) != masked || (ids[size - 2] & mask) != masked
+                        || (ids[size - 1] & mask) != masked || level(id) == 0) break;
+                id = parent(id);
+                size -= 3;
+            }
+            ids[size++] = id;
+        }
+        return size;
+    }
+
+    // Allocation free S2CellId.fromLatLng(S2LatLng.fromDegrees(lat, lon)).parent(level).id()
+
+    public static long cellId(double lat, double lon, int level) {
+        double phi = lat * 0.017453292519943295;
+        double theta = lon * 0.017453292519943295;
+        double cosPhi = Math.cos(phi);
+        double x = Math.cos(theta) * cosPhi;
+        double y = Math.sin(theta) * cosPhi;
+        double z = Math.sin(phi);
+
+        double absX = Math.abs(x);
+        double absY = Math.abs(y);
+        double absZ = Math.abs(z);
+        int face;
+        double u;
+        double v;
+        if (absX > absY && absX > absZ) {
+            if (x >= 0) { face = 0; u = y / x; v = z / x; }
+            else { face = 3; u = z / x; v = y / x; }
+        }
+        else if (absX <= absY && absY > absZ) {
+            if (y >= 0) { face = 1; u = -x / y; v = z / y; }
+            else { face = 4; u = z / y; v = -x / y; }
+        }
+        else {
+            if (z >= 0) { face = 2; u = -x / z; v = -y / z; }
+            else { face = 5; u = -y / z; v = -x / z; }
+        }
+        long id = fromFaceIJ(face, stToIJ(uvToST(u)), stToIJ(uvToST(v)));
+        return level == S2CellId.MAX_LEVEL ? id : parent(id, level);
+    }
+
+    // Batch versions of cellId over whole lat/lon blocks, null where either coordinate is null
+
+    public static void writeCellIds(Block lats, Block lons, int level, BlockBuilder output) {
+        checkSameSize(lats, lons);
+        for (int i = 0; i < lats.getPositionCount(); i++) {
+            if (lats.isNull(i) || lons.isNull(i)) {
+                output.appendNull();
+            }
+            else {
+                BIGINT.writeLong(output, cellId(DOUBLE.getDouble(lats, i), DOUBLE.getDouble(lons, i), level));
+            }
+        }
+    }
+
+    public static void writeCellTokens(Block lats, Block lons, int level, BlockBuilder output) {
+        checkSameSize(lats, lons);
+        byte[] buffer = new byte[16];
+        Slice token = Slices.wrappedBuffer(buffer);
+        for (int i = 0; i < lats.getPositionCount(); i++) {
+            if (lats.isNull(i) || lons.isNull(i)) {
+                output.appendNull();
+            }
+            else {
+                int length = writeToken(cellId(DOUBLE.getDouble(lats, i), DOUBLE.getDouble(lons, i), level), buffer);
+                VARCHAR.writeSlice(output, token, 0, length);
+            }
+        }
+    }
+
+    private static void checkSameSize(Block lats, Block lons) {
+        if (lats.getPositionCount() != lons.getPositionCount()) {
+            throw new TrinoException(StandardErrorCode.INVALID_FUNCTION_ARGUMENT, "Latitude and longitude arrays must have the same size");
+        }
+    }
+
+    // quadratic projection, the S2 default
+    private static double uvToST(double u) {
+        return u >= 0 ? 0.5 * Math.sqrt(1 + 3 * u) : 1 - 0.5 * Math.sqrt(1 - 3 * u);
+    }
+
+    // quadratic projection inverse
+    static double stToUV(double s) {
+        return s >= 0.5 ? (1.0 / 3) * (4 * s * s - 1) : (1.0 / 3) * (1 - 4 * (1 - s) * (1 - s));
     }
+
+    static double ijToUV(int ij, int size) {
+        return stToUV((1.0 / S2CellId.MAX_SIZE) * (ij & -size));
+    }
+
+    static double faceUvToX(int face, double u, double v) {
+        switch (face) {
+            case 0: return 1;
+            case 1: return -u;
+            case 2: return -u;
+            case 3: return -1;
+            case 4: return v;
+            default: return v;
+        }
+    }
+
+    static double faceUvToY(int face, double u, double v) {
+        switch (face) {
+            case 0: return u;
+            case 1: return 1;
+            case 2: return -v;
+            case 3: return -v;
+            case 4: return -1;
+            default: return u;
+        }
+    }
+
+    static double faceUvToZ(int face, double u, double v) {
+        switch (face) {
+            case 0: return v;
+            case 1: return v;
+            case 2: return 1;
+            case 3: return -u;
+            case 4: return -u;
+            default: return -1;
+        }
+    }
+
+    static double xyzToU(int face, double x, double y, double z) {
+        switch (face) {
+            case 0: return y / x;
+            case 1: return -x / y;
+            case 2: return -x / z;
+            case 3: return z / x;
+            case 4: return z / y;
+            default: return -y / z;
+        }
+    }
+
+    static double xyzToV(int face, double x, double y, double z) {
+        switch (face) {
+            case 0: return z / x;
+            case 1: return z / y;
+            case 2: return -y / z;
+            case 3: return y / x;
+            case 4: return -x / y;
+            default: return -x / z;
+        }
+    }
+
+    static int xyzToFace(double x, double y, double z) {
+        double absX = Math.abs(x);
+        double absY = Math.abs(y);
+        double absZ = Math.abs(z);
+        if (absX > absY) {
+            if (absX > absZ) return x < 0 ? 3 : 0;
+            return z < 0 ? 5 : 2;
+        }
+        if (absY > absZ) return y < 0 ? 4 : 1;
+        return z < 0 ? 5 : 2;
+    }
+
+    private static int stToIJ(double s) {
+        return Math.max(0, Math.min(S2CellId.MAX_SIZE - 1, (int) Math.round(S2CellId.MAX_SIZE * s - 0.5)));
+    }
+
+    private static long fromFaceIJ(int face, int i, int j) {
+        long n = ((long) face) << (S2CellId.POS_BITS - 1);
+        int bits = face & SWAP_MASK;
+        int mask = (1 << LOOKUP_BITS) - 1;
+        for (int k = 7; k >= 0; k--) {
+            bits += ((i >> (k * LOOKUP_BITS)) & mask) << (LOOKUP_BITS + 2);
+            bits += ((j >> (k * LOOKUP_BITS)) & mask) << 2;
+            bits = LOOKUP_POS[bits];
+            n |= ((long) (bits >> 2)) << (k * 2 * LOOKUP_BITS);
+            bits &= (SWAP_MASK | INVERT_MASK);
+        }
+        return n * 2 + 1;
+    }
+
+    private record CovererKey(int minLevel, int maxLevel, int maxCells, int levelMod) {}
 }
@@ -0,0 +1,38 @@
+package io.trino.s2.geometry.functions;
+
+import io.trino.spi.TrinoException;
+
+import static io.trino.spi.StandardErrorCode.EXCEEDED_FUNCTION_MEMORY_LIMIT;
+
+/**
+ * The most bytes of cells one call may hold, shared by coverings, trajectories and neighbor lists.
+ *
+ * -Ds2.cover.memory.budget sets it, 512MB by default.
+ */
+public final class S2MemoryBudget
+{
+    public static final long MEMORY_BUDGET = Long.getLong("s2.cover.memory.budget", 512L << 20);
+
+    // S2CellId instance and its reference in the cell list
+    static final int BYTES_PER_CELL = 32;
+
+    private S2MemoryBudget() {}
+
+    /**
+     * Fails when cells exceed the memory budget, what names the cells in the message.
+     */
+    static void checkBudget(String what, long cells)
+    {
+        checkBudget(what, cells, MEMORY_BUDGET);
+    }
+
+    /**
+     * Fails when cells of BYTES_PER_CELL exceed budget, what names the cells in the message.
+     */
+    static void checkBudget(String what, long cells, long budget)
+    {
+        if (cells * BYTES_PER_CELL > budget) {
+            throw new TrinoException(EXCEEDED_FUNCTION_MEMORY_LIMIT, what + " of at least " + cells + " cells exceeds the memory budget of " + budget + " bytes");
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package io.trino.s2.geometry.functions;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Counters and sampled timers of the hot paths, exported over JMX for the Trino jmx connector.
+ *
+ * Instrumentation is on by default. Starting the JVM with -Ds2.metrics.enabled=false turns
+ * ENABLED into a constant false, so the JIT removes every counter update and clock read.
+ */
+public final class S2Metrics
+        implements S2MetricsMBean
+{
+    public static final boolean ENABLED = Boolean.parseBoolean(System.getProperty("s2.metrics.enabled", "true"));
+
+    static final String DOMAIN = "io.trino.s2.geometry.functions";
+
+    private static final Logger LOG = Logger.getLogger(S2Metrics.class.getName());
+
+    public static final S2Timer PARSE_WKT = new S2Timer();
+    public static final S2Timer COVER = new S2Timer();
+    public static final S2Timer CELLS_ARRAY = new S2Timer();
+    public static final S2Timer CONTAINS_EXACT = new S2Timer();
+    public static final S2Timer INTERSECTS_EXACT = new S2Timer();
+
+    private static final LongAdder COVER_CELLS = new LongAdder();
+    private static final LongAdder CELLS_ARRAY_CELLS = new LongAdder();
+    private static final LongAdder CONTAINS_FAST_PATH = new LongAdder();
+    private static final LongAdder INTERSECTS_FAST_PATH = new LongAdder();
+
+    private S2Metrics() {}
+
+    public static void coverCells(int cells) {
+        if (ENABLED) {
+            COVER_CELLS.add(cells);
+        }
+    }
+
+    public static void cellsArrayCells(int cells) {
+        if (ENABLED) {
+            CELLS_ARRAY_CELLS.add(cells);
+        }
+    }
+
+    public static void containsFastPath() {
+        if (ENABLED) {
+            CONTAINS_FAST_PATH.increment();
+        }
+    }
+
+    public static void intersectsFastPath() {
+        if (ENABLED) {
+            INTERSECTS_FAST_PATH.increment();
+        }
+    }
+
+    /**
+     * Registers the metrics in the platform MBean server, once per class loader.
+     */
+    public static synchronized void register() {
+        if (!ENABLED) {
+            return;
+        }
+        register(ManagementFactory.getPlatformMBeanServer());
+    }
+
+    // Called while the plugin loads, the functions work without metrics so a failure is only logged
+    static void register(MBeanServer server) {
+        try {
+            register(server, new ObjectName(DOMAIN + ":name=S2Metrics"), new S2Metrics());
+            register(server, timerName("parse_wkt"), PARSE_WKT);
+            register(server, timerName("cover"), COVER);
+            register(server, timerName("cells_array"), CELLS_ARRAY);
+            register(server, timerName("contains_exact"), CONTAINS_EXACT);
+            register(server, timerName("intersects_exact"), INTERSECTS_EXACT);
+        }
+        catch (JMException e) {
+            LOG.log(Level.WARNING, "Failed to register s2 metrics, they are not exported", e);
+        }
+    }
+
+    static ObjectName timerName(String name) throws JMException {
+        return new ObjectName(DOMAIN + ":type=S2Timer,name=" + name);
+    }
+
+    private static void register(MBeanServer server, ObjectName name, Object mbean) throws JMException {
+        if (!server.isRegistered(name)) {
+            server.registerMBean(mbean, name);
+        }
+    }
+
+    @Override
+    public long getCoverCells() {
+        return COVER_CELLS.sum();
+    }
+
+    @Override
+    public long getCellsArrayCells() {
+        return CELLS_ARRAY_CELLS.sum();
+    }
+
+    @Override
+    public long getContainsFastPath() {
+        return CONTAINS_FAST_PATH.sum();
+    }
+
+    @Override
+    public long getContainsExact() {
+        return CONTAINS_EXACT.getCount();
+    }
+
+    @Override
+    public long getIntersectsFastPath() {
+        return INTERSECTS_FAST_PATH.sum();
+    }
+
+    @Override
+    public long getIntersectsExact() {
+        return INTERSECTS_EXACT.getCount();
+    }
+
+    @Override
+    public long getPolygonCacheHits() {
+        return S2PolygonCache.polygonHits();
+    }
+
+    @Override
+    public long getPolygonCacheMisses() {
+        return S2PolygonCache.polygonMisses();
+    }
+
+    @Override
+    public double getPolygonCacheHitRate() {
+        return hitRate(S2PolygonCache.polygonHits(), S2PolygonCache.polygonMisses());
+    }
+
+    @Override
+    public long getCoverCacheHits() {
+        return S2PolygonCache.coverHits();
+    }
+
+    @Override
+    public long getCoverCacheMisses() {
+        return S2PolygonCache.coverMisses();
+    }
+
+    @Override
+    public double getCoverCacheHitRate() {
+        return hitRate(S2PolygonCache.coverHits(), S2PolygonCache.coverMisses());
+    }
+
+    private static double hitRate(long hits, long misses) {
+        return hits + misses == 0 ? 0 : (double) hits / (hits + misses);
+    }
+}
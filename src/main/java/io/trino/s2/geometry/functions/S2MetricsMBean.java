@@ -0,0 +1,31 @@
+package io.trino.s2.geometry.functions;
+
+/**
+ * JMX view of the {@link S2Metrics} counters and the polygon cache statistics.
+ */
+public interface S2MetricsMBean
+{
+    long getCoverCells();
+
+    long getCellsArrayCells();
+
+    long getContainsFastPath();
+
+    long getContainsExact();
+
+    long getIntersectsFastPath();
+
+    long getIntersectsExact();
+
+    long getPolygonCacheHits();
+
+    long getPolygonCacheMisses();
+
+    double getPolygonCacheHitRate();
+
+    long getCoverCacheHits();
+
+    long getCoverCacheMisses();
+
+    double getCoverCacheHitRate();
+}
@@ -0,0 +1,87 @@
+package io.trino.s2.geometry.functions;
+
+import io.trino.spi.block.BlockBuilder;
+import io.trino.spi.function.AggregationFunction;
+import io.trino.spi.function.AggregationState;
+import io.trino.spi.function.CombineFunction;
+import io.trino.spi.function.Description;
+import io.trino.spi.function.InputFunction;
+import io.trino.spi.function.OutputFunction;
+import io.trino.spi.function.SqlType;
+import io.trino.spi.type.ArrayType;
+import io.trino.spi.type.StandardTypes;
+
+@AggregationFunction("s2_nearest_agg")
+@Description("Returns the k cell ids nearest to their row latitude,longitude degrees with the distance in meter, nearest first")
+public final class S2NearestAggregation
+{
+    private static final ArrayType ID_DISTANCE_ARRAY = new ArrayType(S2NearestCells.ID_DISTANCE);
+
+    private S2NearestAggregation() {}
+
+    @InputFunction
+    public static void input(
+            @AggregationState S2NearestHeapState state,
+            @SqlType(StandardTypes.BIGINT) long cellid,
+            @SqlType(StandardTypes.DOUBLE) double lat,
+            @SqlType(StandardTypes.DOUBLE) double lon,
+            @SqlType(StandardTypes.INTEGER) long k)
+    {
+        add(state, cellid, lat, lon, k);
+    }
+
+    @CombineFunction
+    public static void combine(@AggregationState S2NearestHeapState state, @AggregationState S2NearestHeapState otherState)
+    {
+        S2NearestHeap other = otherState.getHeap();
+        if (other == null) {
+            return;
+        }
+        S2NearestHeap heap = state.getHeap();
+        if (heap == null) {
+            state.setHeap(other);
+            state.addMemoryUsage(other.getEstimatedSize());
+            return;
+        }
+        long size = heap.getEstimatedSize();
+        heap.addAll(other);
+        state.addMemoryUsage(heap.getEstimatedSize() - size);
+    }
+
+    @OutputFunction("array(row(cell bigint, distance double))")
+    public static void output(@AggregationState S2NearestHeapState state, BlockBuilder out)
+    {
+        output(state, out, false);
+    }
+
+    static void output(S2NearestHeapState state, BlockBuilder out, boolean tokens)
+    {
+        S2NearestHeap heap = state.getHeap();
+        if (heap == null) {
+            out.appendNull();
+            return;
+        }
+        long[] ids = new long[heap.size()];
+        double[] distances = new double[heap.size()];
+        int count = heap.sorted(ids, distances);
+        (tokens ? S2TokenNearestAggregation.TOKEN_DISTANCE_ARRAY : ID_DISTANCE_ARRAY)
+                .writeObject(out, S2NearestCells.rows(ids, distances, count, tokens));
+    }
+
+    static void add(S2NearestHeapState state, long cellid, double lat, double lon, long k)
+    {
+        S2NearestCells.checkK(k);
+        if (!S2Helper.isValid(cellid)) {
+            return;
+        }
+        S2NearestHeap heap = state.getHeap();
+        if (heap == null) {
+            heap = new S2NearestHeap((int) k);
+            state.setHeap(heap);
+            state.addMemoryUsage(heap.getEstimatedSize());
+        }
+        long size = heap.getEstimatedSize();
+        heap.add(cellid, S2NearestCells.distance(cellid, lat, lon));
+        state.addMemoryUsage(heap.getEstimatedSize() - size);
+    }
+}
@@ -0,0 +1,225 @@
+package io.trino.s2.geometry.functions;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.geometry.S2CellId;
+import com.google.common.geometry.S2ClosestPointQuery;
+import com.google.common.geometry.S2LatLng;
+import com.google.common.geometry.S2PointIndex;
+import io.airlift.slice.Slice;
+import io.trino.spi.TrinoException;
+import io.trino.spi.block.Block;
+import io.trino.spi.block.RowBlockBuilder;
+import io.trino.spi.type.RowType;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import static io.airlift.slice.Slices.wrappedBuffer;
+import static io.trino.spi.StandardErrorCode.INVALID_FUNCTION_ARGUMENT;
+import static io.trino.spi.type.BigintType.BIGINT;
+import static io.trino.spi.type.DoubleType.DOUBLE;
+import static io.trino.spi.type.RowType.field;
+import static io.trino.spi.type.VarcharType.VARCHAR;
+
+/**
+ * Candidate cell centers in an S2PointIndex, answering k nearest cell queries
+ * without measuring the distance to every candidate.
+ *
+ * Results are rows of the cell and its distance in meters, nearest first.
+ */
+public final class S2NearestCells {
+
+    public static final double EARTH_RADIUS_METERS = 6371010.0;
+
+    public static final RowType TOKEN_DISTANCE = RowType.from(List.of(field("cell", VARCHAR), field("distance", DOUBLE)));
+    public static final RowType ID_DISTANCE = RowType.from(List.of(field("cell", BIGINT), field("distance", DOUBLE)));
+
+    // most cells one s2_nearest or s2_nearest_agg result holds
+    static final int MAX_K = 10_000;
+
+    private static final int MAX_CACHED_BLOCKS = 1000;
+
+    // fewer cells are scanned, like S2ClosestPointQuery does below 150 points
+    private static final int MAX_BRUTE_FORCE_CELLS = 150;
+
+    // Keyed by block identity. A block seen again is a constant or broadcast array reused for
+    // every row, only those get an index, a block seen once is scanned
+    private static final Cache<Block, S2NearestCells> BLOCKS = CacheBuilder.newBuilder()
+            .weakKeys()
+            .maximumSize(MAX_CACHED_BLOCKS)
+            .build();
+
+    private final long[] ids;
+    private final int count;
+    // null when the cells are scanned
+    private final S2PointIndex<Long> index;
+
+    // A query keeps its search state and a covering of the index computed on creation,
+    // so queries are reused, one per concurrent caller
+    private final Queue<S2ClosestPointQuery<Long>> queries = new ConcurrentLinkedQueue<S2ClosestPointQuery<Long>>();
+
+    private S2NearestCells(long[] ids, int count, boolean indexed) {
+        int valid = 0;
+        for (int i = 0; i < count; i++) {
+            if (S2Helper.isValid(ids[i])) {
+                ids[valid++] = ids[i];
+            }
+        }
+        this.ids = ids;
+        this.count = valid;
+        if (!indexed) {
+            index = null;
+            return;
+        }
+        index = new S2PointIndex<Long>();
+        for (int i = 0; i < valid; i++) {
+            index.add(new S2CellId(ids[i]).toPoint(), ids[i]);
+        }
+        // sorts the entries now, later queries only read them
+        index.iterator();
+    }
+
+    /**
+     * Fails for a k outside 1 to MAX_K, the same bound for the scalar and the aggregate functions.
+     */
+    static int checkK(long k) {
+        if (k < 1 || k > MAX_K) {
+            throw new TrinoException(INVALID_FUNCTION_ARGUMENT, "k must be between 1 and " + MAX_K);
+        }
+        return (int) k;
+    }
+
+    public static S2NearestCells fromTokenBlock(Block cellTokens) {
+        return fromBlock(cellTokens, true);
+    }
+
+    public static S2NearestCells fromIdBlock(Block cellIds) {
+        return fromBlock(cellIds, false);
+    }
+
+    private static S2NearestCells fromBlock(Block cells, boolean tokens) {
+        if (cells.getPositionCount() <= MAX_BRUTE_FORCE_CELLS) {
+            return new S2NearestCells(ids(cells, tokens), cells.getPositionCount(), false);
+        }
+        S2NearestCells seen = BLOCKS.getIfPresent(cells);
+        if (seen != null && seen.index != null) {
+            return seen;
+        }
+        S2NearestCells nearest = seen == null
+                ? new S2NearestCells(ids(cells, tokens), cells.getPositionCount(), false)
+                : new S2NearestCells(seen.ids, seen.count, true);
+        BLOCKS.put(cells, nearest);
+        return nearest;
+    }
+
+    // null positions are left as invalid id 0
+    private static long[] ids(Block cells, boolean tokens) {
+        long[] ids = new long[cells.getPositionCount()];
+        for (int i = 0; i < ids.length; i++) {
+            if (!cells.isNull(i)) {
+                ids[i] = tokens ? S2Helper.tokenToId(VARCHAR.getSlice(cells, i)) : BIGINT.getLong(cells, i);
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * Indexed cells of the first count ids, invalid ids are dropped in place.
+     */
+    public static S2NearestCells fromCellIds(long[] ids, int count) {
+        return new S2NearestCells(ids, count, true);
+    }
+
+    // same cells without the index, each query measures every cell
+    static S2NearestCells scanning(long[] ids, int count) {
+        return new S2NearestCells(ids, count, false);
+    }
+
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Ids of the k cells nearest to the point, nearest first.
+     */
+    public long[] nearest(double lat, double lon, int k) {
+        if (index == null) {
+            return scan(lat, lon, k);
+        }
+        S2ClosestPointQuery<Long> query = queries.poll();
+        if (query == null) {
+            query = new S2ClosestPointQuery<Long>(index);
+        }
+        query.setMaxPoints(k);
+        List<S2ClosestPointQuery.Result<Long>> results = new ArrayList<S2ClosestPointQuery.Result<Long>>(Math.min(k, size()));
+        query.findClosestPoints(results, S2LatLng.fromDegrees(lat, lon).toPoint());
+        queries.offer(query);
+        long[] ids = new long[results.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = results.get(i).entry().data();
+        }
+        return ids;
+    }
+
+    private long[] scan(double lat, double lon, int k) {
+        S2NearestHeap heap = new S2NearestHeap(k);
+        for (int i = 0; i < count; i++) {
+            heap.add(ids[i], distance(ids[i], lat, lon));
+        }
+        long[] nearest = new long[heap.size()];
+        heap.sorted(nearest, new double[heap.size()]);
+        return nearest;
+    }
+
+    public Block nearestTokens(double lat, double lon, int k) {
+        long[] ids = nearest(lat, lon, k);
+        return rows(ids, distances(ids, lat, lon), ids.length, true);
+    }
+
+    public Block nearestIds(double lat, double lon, int k) {
+        long[] ids = nearest(lat, lon, k);
+        return rows(ids, distances(ids, lat, lon), ids.length, false);
+    }
+
+    private static double[] distances(long[] ids, double lat, double lon) {
+        double[] distances = new double[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            distances[i] = distance(ids[i], lat, lon);
+        }
+        return distances;
+    }
+
+    /**
+     * Distance in meters from the cell center to the point, same as s2_distance.
+     */
+    public static double distance(long id, double lat, double lon) {
+        return new S2CellId(id).toLatLng().getDistance(S2LatLng.fromDegrees(lat, lon)).radians() * EARTH_RADIUS_METERS;
+    }
+
+    /**
+     * Block of (cell, distance) rows for the first count cells, cells as tokens or ids.
+     */
+    public static Block rows(long[] ids, double[] distances, int count, boolean tokens) {
+        RowType rowType = tokens ? TOKEN_DISTANCE : ID_DISTANCE;
+        RowBlockBuilder rows = (RowBlockBuilder) rowType.createBlockBuilder(null, count);
+        byte[] buffer = new byte[16];
+        Slice token = wrappedBuffer(buffer);
+        for (int i = 0; i < count; i++) {
+            long id = ids[i];
+            double distance = distances[i];
+            rows.buildEntry(fields -> {
+                if (tokens) {
+                    VARCHAR.writeSlice(fields.get(0), token, 0, S2Helper.writeToken(id, buffer));
+                }
+                else {
+                    BIGINT.writeLong(fields.get(0), id);
+                }
+                DOUBLE.writeDouble(fields.get(1), distance);
+            });
+        }
+        return rows.build();
+    }
+}
@@ -0,0 +1,156 @@
+package io.trino.s2.geometry.functions;
+
+import io.airlift.slice.DynamicSliceOutput;
+import io.airlift.slice.Slice;
+import io.airlift.slice.SliceInput;
+
+import java.util.Arrays;
+
+/**
+ * The k cells with the smallest distance seen so far, kept in a max-heap on
+ * primitive arrays so the farthest kept cell is replaced in O(log k).
+ */
+public final class S2NearestHeap {
+
+    private static final int INSTANCE_SIZE = 32;
+
+    private final int k;
+    private long[] ids;
+    private double[] distances;
+    private int size;
+
+    public S2NearestHeap(int k) {
+        this(k, new long[Math.min(k, 16)], new double[Math.min(k, 16)], 0);
+    }
+
+    private S2NearestHeap(int k, long[] ids, double[] distances, int size) {
+        this.k = k;
+        this.ids = ids;
+        this.distances = distances;
+        this.size = size;
+    }
+
+    public int k() {
+        return k;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void add(long id, double distance) {
+        if (size < k) {
+            if (size == ids.length) {
+                int capacity = (int) Math.min(k, 2L * ids.length);
+                ids = Arrays.copyOf(ids, capacity);
+                distances = Arrays.copyOf(distances, capacity);
+            }
+            ids[size] = id;
+            distances[size] = distance;
+            siftUp(size++);
+        }
+        else if (isCloser(distance, id, 0)) {
+            ids[0] = id;
+            distances[0] = distance;
+            siftDown(0);
+        }
+    }
+
+    public void addAll(S2NearestHeap other) {
+        for (int i = 0; i < other.size; i++) {
+            add(other.ids[i], other.distances[i]);
+        }
+    }
+
+    /**
+     * Writes the kept cells nearest first into sortedIds and sortedDistances and returns their count.
+     */
+    public int sorted(long[] sortedIds, double[] sortedDistances) {
+        return new S2NearestHeap(k, Arrays.copyOf(ids, size), Arrays.copyOf(distances, size), size)
+                .drain(sortedIds, sortedDistances);
+    }
+
+    private int drain(long[] sortedIds, double[] sortedDistances) {
+        int count = size;
+        for (int i = count - 1; i >= 0; i--) {
+            sortedIds[i] = ids[0];
+            sortedDistances[i] = distances[0];
+            size--;
+            if (size > 0) {
+                ids[0] = ids[size];
+                distances[0] = distances[size];
+                siftDown(0);
+            }
+        }
+        return count;
+    }
+
+    public long getEstimatedSize() {
+        return INSTANCE_SIZE + 32 + (long) ids.length * (Long.BYTES + Double.BYTES);
+    }
+
+    // ties are broken on the id, so the kept cells do not depend on the input order
+    private boolean isCloser(double distance, long id, int index) {
+        return distance < distances[index] || (distance == distances[index] && Long.compareUnsigned(id, ids[index]) < 0);
+    }
+
+    private void siftUp(int index) {
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (!isCloser(distances[parent], ids[parent], index)) {
+                return;
+            }
+            swap(index, parent);
+            index = parent;
+        }
+    }
+
+    private void siftDown(int index) {
+        while (true) {
+            int farthest = index;
+            int left = 2 * index + 1;
+            int right = left + 1;
+            if (left < size && isCloser(distances[farthest], ids[farthest], left)) {
+                farthest = left;
+            }
+            if (right < size && isCloser(distances[farthest], ids[farthest], right)) {
+                farthest = right;
+            }
+            if (farthest == index) {
+                return;
+            }
+            swap(index, farthest);
+            index = farthest;
+        }
+    }
+
+    private void swap(int a, int b) {
+        long id = ids[a];
+        ids[a] = ids[b];
+        ids[b] = id;
+        double distance = distances[a];
+        distances[a] = distances[b];
+        distances[b] = distance;
+    }
+
+    public Slice serialize() {
+        DynamicSliceOutput output = new DynamicSliceOutput(8 + size * (Long.BYTES + Double.BYTES));
+        output.writeInt(k);
+        output.writeInt(size);
+        for (int i = 0; i < size; i++) {
+            output.writeLong(ids[i]);
+            output.writeDouble(distances[i]);
+        }
+        return output.slice();
+    }
+
+    public static S2NearestHeap deserialize(Slice serialized) {
+        SliceInput input = serialized.getInput();
+        S2NearestHeap heap = new S2NearestHeap(input.readInt());
+        int count = input.readInt();
+        for (int i = 0; i < count; i++) {
+            heap.add(input.readLong(), input.readDouble());
+        }
+        return heap;
+    }
+}
@@ -0,0 +1,15 @@
+package io.trino.s2.geometry.functions;
+
+import io.trino.spi.function.AccumulatorState;
+import io.trino.spi.function.AccumulatorStateMetadata;
+
+@AccumulatorStateMetadata(stateFactoryClass = S2NearestHeapStateFactory.class, stateSerializerClass = S2NearestHeapStateSerializer.class)
+public interface S2NearestHeapState
+        extends AccumulatorState
+{
+    S2NearestHeap getHeap();
+
+    void setHeap(S2NearestHeap heap);
+
+    void addMemoryUsage(long memory);
+}
@@ -0,0 +1,101 @@
+package io.trino.s2.geometry.functions;
+
+import io.trino.spi.function.AccumulatorStateFactory;
+import io.trino.spi.function.GroupedAccumulatorState;
+
+import java.util.Arrays;
+
+public class S2NearestHeapStateFactory
+        implements AccumulatorStateFactory<S2NearestHeapState>
+{
+    @Override
+    public S2NearestHeapState createSingleState()
+    {
+        return new SingleS2NearestHeapState();
+    }
+
+    @Override
+    public S2NearestHeapState createGroupedState()
+    {
+        return new GroupedS2NearestHeapState();
+    }
+
+    public static class GroupedS2NearestHeapState
+            implements GroupedAccumulatorState, S2NearestHeapState
+    {
+        private static final int INSTANCE_SIZE = 40;
+
+        private S2NearestHeap[] heaps = new S2NearestHeap[0];
+        private int groupId;
+        private long memoryUsage;
+
+        @Override
+        public void setGroupId(int groupId)
+        {
+            this.groupId = groupId;
+        }
+
+        @Override
+        public void ensureCapacity(int size)
+        {
+            if (heaps.length < size) {
+                heaps = Arrays.copyOf(heaps, Math.max(size, heaps.length * 2));
+            }
+        }
+
+        @Override
+        public S2NearestHeap getHeap()
+        {
+            return heaps[groupId];
+        }
+
+        @Override
+        public void setHeap(S2NearestHeap heap)
+        {
+            heaps[groupId] = heap;
+        }
+
+        @Override
+        public void addMemoryUsage(long memory)
+        {
+            memoryUsage += memory;
+        }
+
+        @Override
+        public long getEstimatedSize()
+        {
+            return INSTANCE_SIZE + 16 + (long) heaps.length * 8 + memoryUsage;
+        }
+    }
+
+    public static class SingleS2NearestHeapState
+            implements S2NearestHeapState
+    {
+        private static final int INSTANCE_SIZE = 16;
+
+        private S2NearestHeap heap;
+
+        @Override
+        public S2NearestHeap getHeap()
+        {
+            return heap;
+        }
+
+        @Override
+        public void setHeap(S2NearestHeap heap)
+        {
+            this.heap = heap;
+        }
+
+        @Override
+        public void addMemoryUsage(long memory)
+        {
+        }
+
+        @Override
+        public long getEstimatedSize()
+        {
+            return INSTANCE_SIZE + (heap == null ? 0 : heap.getEstimatedSize());
+        }
+    }
+}
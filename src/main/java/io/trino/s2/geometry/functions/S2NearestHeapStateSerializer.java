@@ -0,0 +1,35 @@
+package io.trino.s2.geometry.functions;
+
+import io.trino.spi.block.Block;
+import io.trino.spi.block.BlockBuilder;
+import io.trino.spi.function.AccumulatorStateSerializer;
+import io.trino.spi.type.Type;
+
+import static io.trino.spi.type.VarbinaryType.VARBINARY;
+
+public class S2NearestHeapStateSerializer
+        implements AccumulatorStateSerializer<S2NearestHeapState>
+{
+    @Override
+    public Type getSerializedType()
+    {
+        return VARBINARY;
+    }
+
+    @Override
+    public void serialize(S2NearestHeapState state, BlockBuilder out)
+    {
+        if (state.getHeap() == null) {
+            out.appendNull();
+        }
+        else {
+            VARBINARY.writeSlice(out, state.getHeap().serialize());
+        }
+    }
+
+    @Override
+    public void deserialize(Block block, int index, S2NearestHeapState state)
+    {
+        state.setHeap(S2NearestHeap.deserialize(VARBINARY.getSlice(block, index)));
+    }
+}
@@ -0,0 +1,240 @@
+package io.trino.s2.geometry.functions;
+
+import com.google.common.geometry.S2Cap;
+import com.google.common.geometry.S2Cell;
+import com.google.common.geometry.S2CellId;
+import com.google.common.geometry.S2CellUnion;
+import com.google.common.geometry.S2LatLngRect;
+import com.google.common.geometry.S2Point;
+import com.google.common.geometry.S2Polygon;
+import com.google.common.geometry.S2Projections;
+import com.google.common.geometry.S2Region;
+import com.google.common.geometry.S2RegionCoverer;
+import com.google.common.geometry.S2RegionIntersection;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Covering of large polygons split over a fork join pool, within a memory budget.
+ *
+ * A coarse covering at or above minLevel splits the polygon into sub-regions, the polygon
+ * clipped to each coarse cell. They are covered concurrently by the shared coverer and merged
+ * into one cell union. S2Polygon and its shape indexes are safe for concurrent reads. maxCells
+ * would apply to each sub-region, so coverings it can limit stay on the calling thread and
+ * the result never depends on the parallelism. Sub-regions count their cells against the
+ * budget of the whole call while they are covered, the first failure or an interrupted
+ * caller stops them all.
+ *
+ * -Ds2.cover.parallelism caps the pool threads, 1 (the default) covers on the calling thread.
+ * The memory budget of a covering is S2MemoryBudget.MEMORY_BUDGET.
+ */
+public final class S2ParallelCoverer {
+
+    public static final int PARALLELISM = Math.max(1, Integer.getInteger("s2.cover.parallelism", 1));
+
+    // coverings expected to have fewer cells are not worth splitting
+    private static final double MIN_PARALLEL_CELLS = 10_000;
+    private static final int SUBREGIONS_PER_THREAD = 4;
+
+    private S2ParallelCoverer() {}
+
+    // created on the first parallel covering
+    private static final class Pool {
+        static final ForkJoinPool POOL = new ForkJoinPool(PARALLELISM);
+    }
+
+    /**
+     * Covers the polygon on the shared pool when it is enabled and the covering is expected
+     * to be large, otherwise on the calling thread. Fails once the cells exceed the memory budget.
+     */
+    public static S2CellUnion cover(S2Polygon polygon, int minLevel, int maxLevel, int maxCells, int levelMod, boolean interior) {
+        return cover(polygon, minLevel, maxLevel, maxCells, levelMod, interior, PARALLELISM > 1 ? Pool.POOL : null, S2MemoryBudget.MEMORY_BUDGET);
+    }
+
+    /**
+     * Covers the polygon on pool if it is expected to be large, pool may be null.
+     */
+    static S2CellUnion cover(S2Polygon polygon, int minLevel, int maxLevel, int maxCells, int levelMod, boolean interior, ForkJoinPool pool, long budget) {
+        double area = polygon.getArea();
+        // No cell of a covering is larger than the largest cell at minLevel. An interior covering
+        // may hold none, but the coverer queues every cell above minLevel the polygon intersects
+        // before it can stop at maxCells
+        int boundLevel = interior ? Math.max(0, minLevel - 1) : minLevel;
+        checkBudget((long) Math.ceil(area / S2Projections.PROJ.maxArea.getValue(boundLevel)), budget);
+        // with minLevel == maxLevel only interior coverings stop at maxCells
+        boolean limited = maxCells != Integer.MAX_VALUE && (interior || minLevel != maxLevel);
+        if (limited || area / S2Projections.PROJ.avgArea.getValue(minLevel) < MIN_PARALLEL_CELLS) {
+            pool = null;
+        }
+        // the coverer stops adding cells one cell over the budget, a covering reaching it fails
+        int cap = (int) Math.min(maxCells, budget / S2MemoryBudget.BYTES_PER_CELL + 1);
+        S2RegionCoverer coverer = S2Helper.coverer(minLevel, maxLevel, cap, levelMod);
+        if (pool == null) {
+            S2CellUnion cover;
+            if (levelMod > 1 || cap < maxCells) {
+                // unlike the normalized union, the cell list keeps the cells the coverer stopped at
+                ArrayList<S2CellId> cells = new ArrayList<S2CellId>();
+                cover(coverer, polygon, interior, cells);
+                checkBudget(cells.size(), budget);
+                cover = cellUnion(cells, levelMod);
+            }
+            else {
+                cover = interior ? coverer.getInteriorCovering(polygon) : coverer.getCovering(polygon);
+            }
+            checkBudget(cover.size(), budget);
+            return cover;
+        }
+
+        S2CellUnion roots = S2Helper.coverer(0, minLevel, pool.getParallelism() * SUBREGIONS_PER_THREAD, 1).getCovering(polygon);
+        AtomicLong count = new AtomicLong();
+        AtomicBoolean stop = new AtomicBoolean();
+        AtomicReference<RuntimeException> failure = new AtomicReference<>();
+        List<ForkJoinTask<ArrayList<S2CellId>>> tasks = new ArrayList<>();
+        for (S2CellId root : roots.cellIds()) {
+            BudgetedRegion region = new BudgetedRegion(new S2RegionIntersection(List.<S2Region>of(polygon, new S2Cell(root))), minLevel, count, stop, budget);
+            tasks.add(pool.submit(() -> coverSubregion(coverer, region, interior, failure)));
+        }
+        ArrayList<S2CellId> cells = new ArrayList<S2CellId>();
+        try {
+            for (ForkJoinTask<ArrayList<S2CellId>> task : tasks) {
+                cells.addAll(task.get());
+            }
+        }
+        catch (InterruptedException e) {
+            // the query was cancelled, running sub-regions stop at their next cell
+            stop(tasks, stop);
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+        catch (ExecutionException e) {
+            // the first failure, running sub-regions were stopped by it
+            stop(tasks, stop);
+            throw failure.get() != null ? failure.get() : new RuntimeException(e.getCause());
+        }
+        return cellUnion(cells, levelMod);
+    }
+
+    private static void stop(List<ForkJoinTask<ArrayList<S2CellId>>> tasks, AtomicBoolean stop) {
+        stop.set(true);
+        for (ForkJoinTask<ArrayList<S2CellId>> task : tasks) {
+            task.cancel(false);
+        }
+    }
+
+    private static ArrayList<S2CellId> coverSubregion(S2RegionCoverer coverer, BudgetedRegion region, boolean interior, AtomicReference<RuntimeException> failure) {
+        ArrayList<S2CellId> cells = new ArrayList<S2CellId>();
+        try {
+            cover(coverer, region, interior, cells);
+            region.done(cells.size());
+        }
+        catch (RuntimeException e) {
+            // recorded before stopping, so the other sub-regions' cancellations never replace it
+            failure.compareAndSet(null, e);
+            region.stop.set(true);
+            throw e;
+        }
+        return cells;
+    }
+
+    // A sub-region as the coverer sees it. The cells at or below minLevel it may keep are
+    // counted against the budget of the whole call as the coverer tests them, and once the
+    // budget is exceeded or the call stopped, the next test ends the covering
+    static final class BudgetedRegion
+            implements S2Region
+    {
+        // cells counted before adding them to the shared count
+        static final int BATCH = 1024;
+
+        private final S2Region region;
+        private final int minLevel;
+        private final AtomicLong count;
+        private final AtomicBoolean stop;
+        private final long budget;
+        private long counted;
+        private int pending;
+
+        BudgetedRegion(S2Region region, int minLevel, AtomicLong count, AtomicBoolean stop, long budget) {
+            this.region = region;
+            this.minLevel = minLevel;
+            this.count = count;
+            this.stop = stop;
+            this.budget = budget;
+        }
+
+        @Override
+        public boolean mayIntersect(S2Cell cell) {
+            if (stop.get()) {
+                throw new CancellationException("Polygon cover stopped");
+            }
+            boolean mayIntersect = region.mayIntersect(cell);
+            if (mayIntersect && cell.level() >= minLevel && ++pending == BATCH) {
+                counted += pending;
+                checkBudget(count.addAndGet(pending), budget);
+                pending = 0;
+            }
+            return mayIntersect;
+        }
+
+        // replaces the cells counted while covering with the cells kept
+        void done(int cells) {
+            checkBudget(count.addAndGet(cells - counted), budget);
+        }
+
+        @Override
+        public boolean contains(S2Cell cell) {
+            return region.contains(cell);
+        }
+
+        @Override
+        public boolean contains(S2Point point) {
+            return region.contains(point);
+        }
+
+        @Override
+        public S2Cap getCapBound() {
+            return region.getCapBound();
+        }
+
+        @Override
+        public S2LatLngRect getRectBound() {
+            return region.getRectBound();
+        }
+    }
+
+    private static void cover(S2RegionCoverer coverer, S2Region region, boolean interior, ArrayList<S2CellId> cells) {
+        if (interior) {
+            coverer.getInteriorCovering(region, cells);
+        }
+        else {
+            coverer.getCovering(region, cells);
+        }
+    }
+
+    // The coverer's cell lists keep min_level, a union of them is normalized like
+    // S2RegionCoverer.getCovering(S2Region). Normalizing would merge 4 siblings into a parent
+    // at a level skipped by level_mod, those lists are only sorted
+    private static S2CellUnion cellUnion(ArrayList<S2CellId> cells, int levelMod) {
+        S2CellUnion union = new S2CellUnion();
+        if (levelMod > 1) {
+            Collections.sort(cells);
+            union.initRawSwap(cells);
+        }
+        else {
+            union.initFromCellIds(cells);
+        }
+        return union;
+    }
+
+    private static void checkBudget(long cells, long budget) {
+        S2MemoryBudget.checkBudget("Polygon cover", cells, budget);
+    }
+}
@@ -0,0 +1,232 @@
+package io.trino.s2.geometry.functions;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.geometry.S2CellId;
+import com.google.common.geometry.S2CellUnion;
+import com.google.common.geometry.S2Polygon;
+import com.google.common.geometry.S2RegionCoverer;
+import io.airlift.slice.Slice;
+import io.trino.spi.block.Block;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import static io.trino.spi.type.VarcharType.VARCHAR;
+
+/**
+ * Bounded LRU caches of parsed wkt polygons, their coverings and prepared polygons.
+ *
+ * Polygon arguments are nearly always constants, so functions look them up here
+ * instead of parsing and covering the same wkt on every row. Encoded polygons from
+ * s2_polygon_encode share the caches with wkt text.
+ *
+ * Prepared polygons are weighed by their size, -Ds2.prepared.cache.bytes bounds them
+ * (default 512MB). Joins of many distinct polygons need it to hold every polygon of
+ * the join, otherwise nearly every pair misses.
+ */
+public final class S2PolygonCache {
+
+    private static final int MAX_POLYGONS = 1000;
+    private static final int MAX_COVERS = 1000;
+    public static final long PREPARED_CACHE_BYTES = Long.getLong("s2.prepared.cache.bytes", 512L << 20);
+
+    // identity caches only serve constant polygon arguments
+    private static final int MAX_PREPARED_BY_IDENTITY = 1000;
+
+    private static final LoadingCache<Source, S2Polygon> POLYGONS = CacheBuilder.newBuilder()
+            .maximumSize(MAX_POLYGONS)
+            .build(CacheLoader.from(source -> source.encoded()
+                    ? S2Helper.decodePolygon(source.value())
+                    : S2Helper.parseWktPolygon(source.value())));
+
+    private static final LoadingCache<CoverKey, CachedCover> COVERS = CacheBuilder.newBuilder()
+            .maximumSize(MAX_COVERS)
+            .build(CacheLoader.from(key -> {
+                S2Polygon polygon = polygon(key.source());
+                S2CellUnion cover = key.interior()
+                        ? S2Helper.interiorCover(polygon, key.minLevel(), key.maxLevel(), key.maxCells(), key.levelMod())
+                        : S2Helper.cover(polygon, key.minLevel(), key.maxLevel(), key.maxCells(), key.levelMod());
+                return new CachedCover(polygon, cover);
+            }));
+
+    private static final LoadingCache<Source, S2PreparedPolygon> PREPARED = CacheBuilder.newBuilder()
+            .maximumWeight(PREPARED_CACHE_BYTES)
+            .weigher((Source source, S2PreparedPolygon prepared) -> (int) Math.min(Integer.MAX_VALUE, source.value().length() + prepared.estimatedSize()))
+            .build(CacheLoader.from(source -> S2PreparedPolygon.prepare(polygon(source))));
+
+    // keyed by slice identity, a constant polygon argument is the same slice for every row and
+    // skips hashing and comparing the whole value
+    private static final Cache<Slice, S2PreparedPolygon> PREPARED_BY_IDENTITY = CacheBuilder.newBuilder()
+            .weakKeys()
+            .maximumSize(MAX_PREPARED_BY_IDENTITY)
+            .build();
+
+    private static final Cache<Slice, S2PreparedPolygon> DECODED_PREPARED_BY_IDENTITY = CacheBuilder.newBuilder()
+            .weakKeys()
+            .maximumSize(MAX_PREPARED_BY_IDENTITY)
+            .build();
+
+    private static final LongAdder POLYGON_HITS = new LongAdder();
+    private static final LongAdder POLYGON_MISSES = new LongAdder();
+    private static final LongAdder COVER_HITS = new LongAdder();
+    private static final LongAdder COVER_MISSES = new LongAdder();
+
+    private S2PolygonCache() {}
+
+    // Polygons are given either as wkt text or as the S2Polygon encoding from s2_polygon_encode.
+    // On a miss the key is copied, so the cache never retains the page a value was read from
+
+    public static S2Polygon polygon(Slice wkt) {
+        return polygon(new Source(wkt, false));
+    }
+
+    public static S2Polygon decodedPolygon(Slice encoded) {
+        return polygon(new Source(encoded, true));
+    }
+
+    private static S2Polygon polygon(Source source) {
+        S2Polygon polygon = POLYGONS.getIfPresent(source);
+        if (polygon != null) {
+            if (S2Metrics.ENABLED) {
+                POLYGON_HITS.increment();
+            }
+            return polygon;
+        }
+        if (S2Metrics.ENABLED) {
+            POLYGON_MISSES.increment();
+        }
+        return POLYGONS.getUnchecked(source.copy());
+    }
+
+    public static S2PreparedPolygon prepared(Slice wkt) {
+        return prepared(new Source(wkt, false), PREPARED_BY_IDENTITY);
+    }
+
+    public static S2PreparedPolygon decodedPrepared(Slice encoded) {
+        return prepared(new Source(encoded, true), DECODED_PREPARED_BY_IDENTITY);
+    }
+
+    // A polygon column passes a new slice for every row, recording each of them would push the
+    // constants out of the identity cache. A slice is only recorded once its value was seen before
+    private static S2PreparedPolygon prepared(Source source, Cache<Slice, S2PreparedPolygon> byIdentity) {
+        S2PreparedPolygon prepared = byIdentity.getIfPresent(source.value());
+        if (prepared != null) {
+            return prepared;
+        }
+        prepared = PREPARED.getIfPresent(source);
+        if (prepared == null) {
+            return PREPARED.getUnchecked(source.copy());
+        }
+        byIdentity.put(source.value(), prepared);
+        return prepared;
+    }
+
+    // true if the slice itself is recorded in the identity cache of its kind
+    static boolean preparedByIdentity(Slice value, boolean encoded) {
+        return (encoded ? DECODED_PREPARED_BY_IDENTITY : PREPARED_BY_IDENTITY).getIfPresent(value) != null;
+    }
+
+    public static S2CellUnion cover(Slice wkt, int minLevel, int maxLevel) {
+        return cover(wkt, minLevel, maxLevel, S2RegionCoverer.DEFAULT.maxCells(), 1);
+    }
+
+    public static S2CellUnion cover(Slice wkt, int level) {
+        return cover(wkt, level, level);
+    }
+
+    public static S2CellUnion cover(Slice wkt, int minLevel, int maxLevel, int maxCells, int levelMod) {
+        return cover(new CoverKey(new Source(wkt, false), minLevel, maxLevel, maxCells, levelMod, false));
+    }
+
+    public static S2CellUnion interiorCover(Slice wkt, int minLevel, int maxLevel, int maxCells, int levelMod) {
+        return cover(new CoverKey(new Source(wkt, false), minLevel, maxLevel, maxCells, levelMod, true));
+    }
+
+    public static S2CellUnion decodedCover(Slice encoded, int minLevel, int maxLevel) {
+        return decodedCover(encoded, minLevel, maxLevel, S2RegionCoverer.DEFAULT.maxCells(), 1);
+    }
+
+    public static S2CellUnion decodedCover(Slice encoded, int level) {
+        return decodedCover(encoded, level, level);
+    }
+
+    public static S2CellUnion decodedCover(Slice encoded, int minLevel, int maxLevel, int maxCells, int levelMod) {
+        return cover(new CoverKey(new Source(encoded, true), minLevel, maxLevel, maxCells, levelMod, false));
+    }
+
+    public static S2CellUnion decodedInteriorCover(Slice encoded, int minLevel, int maxLevel, int maxCells, int levelMod) {
+        return cover(new CoverKey(new Source(encoded, true), minLevel, maxLevel, maxCells, levelMod, true));
+    }
+
+    /**
+     * Normalized union of the level covers of the wkt polygons in the block, skipping nulls and invalid polygons.
+     */
+    public static S2CellIdUnion unionCover(Block wktPolygons, int level) {
+        S2CellIdUnion union = new S2CellIdUnion();
+        for (int i = 0; i < wktPolygons.getPositionCount(); i++) {
+            if (wktPolygons.isNull(i)) continue;
+            S2CellUnion cover = cover(VARCHAR.getSlice(wktPolygons, i), level);
+            if (cover == null) continue;
+            for (S2CellId cell : cover.cellIds()) {
+                union.add(cell.id());
+            }
+        }
+        return union;
+    }
+
+    private static S2CellUnion cover(CoverKey key) {
+        CachedCover cover = COVERS.getIfPresent(key);
+        if (cover != null) {
+            if (S2Metrics.ENABLED) {
+                COVER_HITS.increment();
+            }
+            return cover.cover();
+        }
+        if (S2Metrics.ENABLED) {
+            COVER_MISSES.increment();
+        }
+        return COVERS.getUnchecked(key.withCopiedSource()).cover();
+    }
+
+    public static long polygonHits() {
+        return POLYGON_HITS.sum();
+    }
+
+    public static long polygonMisses() {
+        return POLYGON_MISSES.sum();
+    }
+
+    public static long coverHits() {
+        return COVER_HITS.sum();
+    }
+
+    public static long coverMisses() {
+        return COVER_MISSES.sum();
+    }
+
+    public static void invalidateAll() {
+        POLYGONS.invalidateAll();
+        COVERS.invalidateAll();
+        PREPARED.invalidateAll();
+        PREPARED_BY_IDENTITY.invalidateAll();
+        DECODED_PREPARED_BY_IDENTITY.invalidateAll();
+    }
+
+    // polygon argument given as wkt text or as an encoded polygon
+    private record Source(Slice value, boolean encoded) {
+        Source copy() {
+            return new Source(value.copy(), encoded);
+        }
+    }
+
+    private record CoverKey(Source source, int minLevel, int maxLevel, int maxCells, int levelMod, boolean interior) {
+        CoverKey withCopiedSource() {
+            return new CoverKey(source.copy(), minLevel, maxLevel, maxCells, levelMod, interior);
+        }
+    }
+
+    // cover is null for an empty or invalid polygon, like S2Helper.cover
+    private record CachedCover(S2Polygon polygon, S2CellUnion cover) {}
+}
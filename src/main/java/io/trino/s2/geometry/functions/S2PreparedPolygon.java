@@ -0,0 +1,166 @@
+package io.trino.s2.geometry.functions;
+
+import com.google.common.geometry.S2CellId;
+import com.google.common.geometry.S2CellUnion;
+import com.google.common.geometry.S2ContainsPointQuery;
+import com.google.common.geometry.S2LatLng;
+import com.google.common.geometry.S2LatLngRect;
+import com.google.common.geometry.S2Point;
+import com.google.common.geometry.S2Polygon;
+import com.google.common.geometry.S2ShapeIndex;
+
+import java.util.ArrayList;
+
+/**
+ * Polygon prepared for exact point containment and polygon overlap tests.
+ *
+ * Points are first checked against a covering and an interior covering of the polygon,
+ * kept as {@link S2CellRanges}. Only points in cells crossing the boundary fall through
+ * to an {@link S2ContainsPointQuery} on an {@link S2ShapeIndex} of the polygon.
+ *
+ * Two polygons are compared through their bounding rectangles and coverings the same way
+ * before the exact S2Polygon test, so most disjoint pairs never reach it.
+ */
+public final class S2PreparedPolygon {
+
+    private static final int MAX_CELLS = 256;
+
+    // measured with JOL: the instance, bound, index cells and query structures, and each vertex
+    // as its S2Point and the references to it from the loop and the shape index
+    private static final int INSTANCE_SIZE = 2048;
+    private static final int BYTES_PER_VERTEX = 72;
+
+    private static final S2PreparedPolygon EMPTY = new S2PreparedPolygon(null, null, null, null, null, 0);
+
+    private final S2Polygon polygon;
+    private final S2ShapeIndex index;
+    private final S2CellRanges cover;
+    private final S2CellRanges interior;
+    private final S2LatLngRect bound;
+    // steradians
+    private final double area;
+
+    private S2PreparedPolygon(S2Polygon polygon, S2ShapeIndex index, S2CellRanges cover, S2CellRanges interior, S2LatLngRect bound, double area) {
+        this.polygon = polygon;
+        this.index = index;
+        this.cover = cover;
+        this.interior = interior;
+        this.bound = bound;
+        this.area = area;
+    }
+
+    public static S2PreparedPolygon prepare(S2Polygon polygon) {
+        S2CellUnion cover = S2Helper.cover(polygon, 0, S2CellId.MAX_LEVEL, MAX_CELLS, 1);
+        if (cover == null) return EMPTY;
+        S2CellUnion interior = S2Helper.interiorCover(polygon, 0, S2CellId.MAX_LEVEL, MAX_CELLS, 1);
+
+        S2ShapeIndex index = new S2ShapeIndex();
+        index.add(polygon.shape());
+        // builds the index now, later queries only read it
+        index.iterator();
+        return new S2PreparedPolygon(polygon, index, ranges(cover), ranges(interior), polygon.getRectBound(), polygon.getArea());
+    }
+
+    private static S2CellRanges ranges(S2CellUnion union) {
+        ArrayList<S2CellId> cells = union.cellIds();
+        long[] ids = new long[cells.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = cells.get(i).id();
+        }
+        return S2CellRanges.fromCellIds(ids, ids.length);
+    }
+
+    public S2Polygon polygon() {
+        return polygon;
+    }
+
+    public boolean isEmpty() {
+        return index == null;
+    }
+
+    /**
+     * Approximate retained size in bytes, for weighing cache entries.
+     */
+    public long estimatedSize() {
+        if (index == null) return INSTANCE_SIZE;
+        return INSTANCE_SIZE + (long) BYTES_PER_VERTEX * polygon.getNumVertices() + 16L * (cover.numRanges() + interior.numRanges());
+    }
+
+    /**
+     * Area of the polygon in steradians, 0 for an empty polygon.
+     */
+    public double area() {
+        return area;
+    }
+
+    /**
+     * Returns true if the polygon contains the point at latitude,longitude degrees.
+     */
+    public boolean contains(double lat, double lon) {
+        if (index == null) return false;
+        long leaf = S2Helper.cellId(lat, lon, S2CellId.MAX_LEVEL);
+        if (interior.contains(leaf)) {
+            S2Metrics.containsFastPath();
+            return true;
+        }
+        if (!cover.intersects(leaf)) {
+            S2Metrics.containsFastPath();
+            return false;
+        }
+        return contains(S2LatLng.fromDegrees(lat, lon).toPoint());
+    }
+
+    /**
+     * Returns true if the polygon contains the center of the cell.
+     */
+    public boolean containsCenter(long id) {
+        if (index == null || !S2Helper.isValid(id)) return false;
+        if (interior.contains(id)) {
+            S2Metrics.containsFastPath();
+            return true;
+        }
+        if (!cover.intersects(id)) {
+            S2Metrics.containsFastPath();
+            return false;
+        }
+        return contains(new S2CellId(id).toPoint());
+    }
+
+    // The query keeps an iterator over the index, so it is created per call rather than shared
+    private boolean contains(S2Point point) {
+        long start = S2Metrics.CONTAINS_EXACT.start();
+        boolean contains = new S2ContainsPointQuery(index).contains(point);
+        S2Metrics.CONTAINS_EXACT.end(start);
+        return contains;
+    }
+
+    /**
+     * Returns true if the polygons have any point in common.
+     */
+    public boolean intersects(S2PreparedPolygon other) {
+        if (index == null || other.index == null) return false;
+        if (!bound.intersects(other.bound) || !cover.intersects(other.cover)) {
+            S2Metrics.intersectsFastPath();
+            return false;
+        }
+        // interior cells lie inside their polygon, a shared one is inside both
+        if (interior.intersects(other.interior)) {
+            S2Metrics.intersectsFastPath();
+            return true;
+        }
+        long start = S2Metrics.INTERSECTS_EXACT.start();
+        boolean intersects = polygon.intersects(other.polygon);
+        S2Metrics.INTERSECTS_EXACT.end(start);
+        return intersects;
+    }
+
+    /**
+     * Area of the intersection of the polygons in steradians.
+     */
+    public double intersectionArea(S2PreparedPolygon other) {
+        if (!intersects(other)) return 0;
+        S2Polygon intersection = new S2Polygon();
+        intersection.initToIntersection(polygon, other.polygon);
+        return intersection.getArea();
+    }
+}
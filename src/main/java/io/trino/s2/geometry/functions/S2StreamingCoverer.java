@@ -0,0 +1,129 @@
+package io.trino.s2.geometry.functions;
+
+import com.google.common.geometry.S2Cell;
+import com.google.common.geometry.S2CellId;
+import com.google.common.geometry.S2Polygon;
+
+/**
+ * Covering of a polygon produced a bounded batch at a time by a depth first walk of the
+ * cell hierarchy below a root cell.
+ *
+ * Cells containing no part of the polygon are pruned, cells inside the polygon are emitted
+ * once they reach minLevel and boundary cells are split down to maxLevel. This gives the
+ * cells S2RegionCoverer returns without a max_cells limit, 4 emitted siblings are merged into
+ * their parent when it is not above minLevel, as in its denormalized covering. Memory only depends
+ * on the depth of the walk: each open level keeps its cell and at most 4 children waiting
+ * to be merged.
+ */
+public final class S2StreamingCoverer {
+
+    // outcome of visiting a cell
+    private static final int NONE = 0;
+    private static final int WHOLE = 1;
+    private static final int OPEN = 2;
+
+    private final S2Polygon polygon;
+    private final int minLevel;
+    private final int maxLevel;
+
+    // open cells of the walk from the root, one per level below it
+    private final long[] cells = new long[S2CellId.MAX_LEVEL + 1];
+    private final int[] nextChild = new int[S2CellId.MAX_LEVEL + 1];
+    private final boolean[] inside = new boolean[S2CellId.MAX_LEVEL + 1];
+    // children of the open cell emitted whole, held back until it is known whether they merge
+    private final long[][] whole = new long[S2CellId.MAX_LEVEL + 1][4];
+    private final int[] wholeCount = new int[S2CellId.MAX_LEVEL + 1];
+    private int depth = -1;
+
+    private final long[] pending = new long[4];
+    private int pendingCount;
+    private int pendingIndex;
+
+    /**
+     * Walks the covering below root, which must be at or above minLevel.
+     */
+    public S2StreamingCoverer(S2Polygon polygon, long root, int minLevel, int maxLevel) {
+        this.polygon = polygon;
+        this.minLevel = minLevel;
+        this.maxLevel = maxLevel;
+        if (S2Helper.level(root) > minLevel) {
+            throw new IllegalArgumentException("root must be at or above min level");
+        }
+        if (visit(root, false) == WHOLE) {
+            pending[pendingCount++] = root;
+        }
+    }
+
+    /**
+     * Writes up to ids.length cells of the covering into ids and returns their count, 0 once the walk is done.
+     */
+    public int next(long[] ids) {
+        int count = 0;
+        while (count < ids.length) {
+            if (pendingIndex < pendingCount) {
+                ids[count++] = pending[pendingIndex++];
+                continue;
+            }
+            pendingIndex = 0;
+            pendingCount = 0;
+            if (depth < 0) {
+                break;
+            }
+            step();
+        }
+        return count;
+    }
+
+    // advances the walk by one child of the deepest open cell, emitted cells go to pending
+    private void step() {
+        int level = depth;
+        if (nextChild[level] == 4) {
+            close();
+            return;
+        }
+        long parent = cells[level];
+        long lsb = S2Helper.lowestOnBit(parent) >>> 2;
+        long child = parent + (2 * nextChild[level]++ - 3) * lsb;
+        if (visit(child, inside[level]) == WHOLE) {
+            whole[level][wholeCount[level]++] = child;
+        }
+    }
+
+    private void close() {
+        int level = depth--;
+        long cell = cells[level];
+        if (wholeCount[level] == 4 && S2Helper.level(cell) >= minLevel) {
+            // 4 whole children make the cell whole
+            if (depth < 0) {
+                pending[pendingCount++] = cell;
+            }
+            else {
+                whole[depth][wholeCount[depth]++] = cell;
+            }
+            return;
+        }
+        System.arraycopy(whole[level], 0, pending, 0, wholeCount[level]);
+        pendingCount = wholeCount[level];
+    }
+
+    private int visit(long id, boolean parentInside) {
+        int level = S2Helper.level(id);
+        boolean cellInside = parentInside;
+        if (!cellInside) {
+            S2Cell cell = new S2Cell(new S2CellId(id));
+            if (!polygon.mayIntersect(cell)) {
+                return NONE;
+            }
+            cellInside = polygon.contains(cell);
+        }
+        if (level >= minLevel && (cellInside || level == maxLevel)) {
+            return WHOLE;
+        }
+        depth++;
+        cells[depth] = id;
+        nextChild[depth] = 0;
+        inside[depth] = cellInside;
+        wholeCount[depth] = 0;
+        return OPEN;
+    }
+}
@@ -0,0 +1,112 @@
+package io.trino.s2.geometry.functions;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Call counter with a latency histogram of a sample of the calls.
+ *
+ * Only one call in SAMPLE_RATE reads the clock. Latencies go to power of two
+ * buckets, so percentiles are upper bounds within a factor of two.
+ *
+ * <pre>
+ * long start = S2Metrics.COVER.start();
+ * ...
+ * S2Metrics.COVER.end(start);
+ * </pre>
+ */
+public final class S2Timer
+        implements S2TimerMBean
+{
+    static final int SAMPLE_RATE = 64;
+
+    private static final long NOT_SAMPLED = Long.MIN_VALUE;
+
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sampled = new LongAdder();
+    private final LongAdder sampledNanos = new LongAdder();
+    private final LongAdder[] buckets = new LongAdder[Long.SIZE];
+
+    S2Timer() {
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    public long start() {
+        if (!S2Metrics.ENABLED) {
+            return NOT_SAMPLED;
+        }
+        count.increment();
+        if (ThreadLocalRandom.current().nextInt(SAMPLE_RATE) != 0) {
+            return NOT_SAMPLED;
+        }
+        return System.nanoTime();
+    }
+
+    public void end(long start) {
+        if (start != NOT_SAMPLED) {
+            record(System.nanoTime() - start);
+        }
+    }
+
+    void record(long nanos) {
+        nanos = Math.max(nanos, 0);
+        sampled.increment();
+        sampledNanos.add(nanos);
+        buckets[nanos == 0 ? 0 : Long.SIZE - 1 - Long.numberOfLeadingZeros(nanos)].increment();
+    }
+
+    @Override
+    public long getCount() {
+        return count.sum();
+    }
+
+    @Override
+    public long getSampledCount() {
+        return sampled.sum();
+    }
+
+    @Override
+    public double getMeanNanos() {
+        long samples = sampled.sum();
+        return samples == 0 ? 0 : (double) sampledNanos.sum() / samples;
+    }
+
+    @Override
+    public long getP50Nanos() {
+        return percentile(0.50);
+    }
+
+    @Override
+    public long getP90Nanos() {
+        return percentile(0.90);
+    }
+
+    @Override
+    public long getP99Nanos() {
+        return percentile(0.99);
+    }
+
+    // upper bound of the bucket holding the percentile, bucket i counts latencies in [2^i, 2^(i+1))
+    long percentile(double percentile) {
+        long[] counts = new long[buckets.length];
+        long total = 0;
+        for (int i = 0; i < buckets.length; i++) {
+            counts[i] = buckets[i].sum();
+            total += counts[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(percentile * total);
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return i >= Long.SIZE - 2 ? Long.MAX_VALUE : (1L << (i + 1)) - 1;
+            }
+        }
+        return Long.MAX_VALUE;
+    }
+}
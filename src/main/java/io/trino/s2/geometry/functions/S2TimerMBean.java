@@ -0,0 +1,19 @@
+package io.trino.s2.geometry.functions;
+
+/**
+ * JMX view of an {@link S2Timer}, times are in nanoseconds.
+ */
+public interface S2TimerMBean
+{
+    long getCount();
+
+    long getSampledCount();
+
+    double getMeanNanos();
+
+    long getP50Nanos();
+
+    long getP90Nanos();
+
+    long getP99Nanos();
+}
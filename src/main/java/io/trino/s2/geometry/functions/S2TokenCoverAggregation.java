@@ -0,0 +1,60 @@
+package io.trino.s2.geometry.functions;
+
+import io.airlift.slice.Slice;
+import io.trino.spi.block.BlockBuilder;
+import io.trino.spi.function.AggregationFunction;
+import io.trino.spi.function.AggregationState;
+import io.trino.spi.function.CombineFunction;
+import io.trino.spi.function.Description;
+import io.trino.spi.function.InputFunction;
+import io.trino.spi.function.OutputFunction;
+import io.trino.spi.function.SqlType;
+import io.trino.spi.type.ArrayType;
+import io.trino.spi.type.StandardTypes;
+
+import static io.airlift.slice.Slices.wrappedBuffer;
+import static io.trino.spi.type.VarcharType.VARCHAR;
+
+@AggregationFunction("s2_cover_agg")
+@Description("Returns the normalized cell union of cell tokens, optionally coarsened to a level")
+public final class S2TokenCoverAggregation
+{
+    private static final ArrayType VARCHAR_ARRAY = new ArrayType(VARCHAR);
+
+    private S2TokenCoverAggregation() {}
+
+    @InputFunction
+    public static void input(@AggregationState S2CellIdUnionState state, @SqlType(StandardTypes.VARCHAR) Slice celltoken)
+    {
+        S2CoverAggregation.add(state, S2Helper.tokenToId(celltoken));
+    }
+
+    @InputFunction
+    public static void input(@AggregationState S2CellIdUnionState state, @SqlType(StandardTypes.VARCHAR) Slice celltoken, @SqlType(StandardTypes.INTEGER) long level)
+    {
+        S2CoverAggregation.add(state, S2CoverAggregation.coarsen(S2Helper.tokenToId(celltoken), level));
+    }
+
+    @CombineFunction
+    public static void combine(@AggregationState S2CellIdUnionState state, @AggregationState S2CellIdUnionState otherState)
+    {
+        S2CoverAggregation.combine(state, otherState);
+    }
+
+    @OutputFunction("array(varchar)")
+    public static void output(@AggregationState S2CellIdUnionState state, BlockBuilder out)
+    {
+        S2CellIdUnion union = state.getUnion();
+        if (union == null) {
+            out.appendNull();
+            return;
+        }
+        BlockBuilder cells = VARCHAR.createBlockBuilder(null, union.size(), 16);
+        byte[] buffer = new byte[16];
+        Slice token = wrappedBuffer(buffer);
+        for (int i = 0; i < union.size(); i++) {
+            VARCHAR.writeSlice(cells, token, 0, S2Helper.writeToken(union.cellId(i), buffer));
+        }
+        VARCHAR_ARRAY.writeObject(out, cells.build());
+    }
+}
@@ -0,0 +1,45 @@
+package io.trino.s2.geometry.functions;
+
+import io.airlift.slice.Slice;
+import io.trino.spi.block.BlockBuilder;
+import io.trino.spi.function.AggregationFunction;
+import io.trino.spi.function.AggregationState;
+import io.trino.spi.function.CombineFunction;
+import io.trino.spi.function.Description;
+import io.trino.spi.function.InputFunction;
+import io.trino.spi.function.OutputFunction;
+import io.trino.spi.function.SqlType;
+import io.trino.spi.type.ArrayType;
+import io.trino.spi.type.StandardTypes;
+
+@AggregationFunction("s2_nearest_agg")
+@Description("Returns the k cell tokens nearest to their row latitude,longitude degrees with the distance in meter, nearest first")
+public final class S2TokenNearestAggregation
+{
+    static final ArrayType TOKEN_DISTANCE_ARRAY = new ArrayType(S2NearestCells.TOKEN_DISTANCE);
+
+    private S2TokenNearestAggregation() {}
+
+    @InputFunction
+    public static void input(
+            @AggregationState S2NearestHeapState state,
+            @SqlType(StandardTypes.VARCHAR) Slice celltoken,
+            @SqlType(StandardTypes.DOUBLE) double lat,
+            @SqlType(StandardTypes.DOUBLE) double lon,
+            @SqlType(StandardTypes.INTEGER) long k)
+    {
+        S2NearestAggregation.add(state, S2Helper.tokenToId(celltoken), lat, lon, k);
+    }
+
+    @CombineFunction
+    public static void combine(@AggregationState S2NearestHeapState state, @AggregationState S2NearestHeapState otherState)
+    {
+        S2NearestAggregation.combine(state, otherState);
+    }
+
+    @OutputFunction("array(row(cell varchar, distance double))")
+    public static void output(@AggregationState S2NearestHeapState state, BlockBuilder out)
+    {
+        S2NearestAggregation.output(state, out, true);
+    }
+}
@@ -0,0 +1,264 @@
+package io.trino.s2.geometry.functions;
+
+import com.google.common.geometry.S2LatLng;
+import com.google.common.geometry.S2Loop;
+import com.google.common.geometry.S2Point;
+import io.airlift.slice.Slice;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Single pass wkt reader working on the utf8 bytes of a Slice.
+ *
+ * Coordinates of a ring are read into a reusable double[] and only turned into
+ * S2Points once the ring is complete. Z and M ordinates are skipped. Malformed input raises
+ * IllegalArgumentException.
+ */
+final class S2WktParser {
+
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22};
+
+    // largest mantissa a double holds exactly
+    private static final long MAX_EXACT_MANTISSA = 1L << 53;
+
+    private final Slice wkt;
+    private int position;
+
+    // x0, y0, x1, y1, ... of the ring being read
+    private double[] coordinates = new double[64];
+
+    private S2WktParser(Slice wkt) {
+        this.wkt = wkt;
+    }
+
+    /**
+     * Returns the normalized loops of a POLYGON or MULTIPOLYGON, shells and holes alike.
+     */
+    static List<S2Loop> parsePolygonLoops(Slice wkt) {
+        S2WktParser parser = new S2WktParser(wkt);
+        List<S2Loop> loops = new ArrayList<S2Loop>();
+        if (parser.keyword("MULTIPOLYGON")) {
+            parser.dimensions();
+            if (!parser.keyword("EMPTY")) {
+                parser.expect('(');
+                do {
+                    parser.readPolygon(loops);
+                } while (parser.next(','));
+                parser.expect(')');
+            }
+        }
+        else if (parser.keyword("POLYGON")) {
+            parser.dimensions();
+            if (!parser.keyword("EMPTY")) {
+                parser.readPolygon(loops);
+            }
+        }
+        else {
+            throw parser.error("Expected POLYGON or MULTIPOLYGON");
+        }
+        parser.expectEnd();
+        return loops;
+    }
+
+    /**
+     * Returns the vertices of a LINESTRING, without repeated consecutive vertices.
+     */
+    static List<S2Point> parseLineString(Slice wkt) {
+        S2WktParser parser = new S2WktParser(wkt);
+        if (!parser.keyword("LINESTRING")) {
+            throw parser.error("Expected LINESTRING");
+        }
+        parser.dimensions();
+        List<S2Point> points = new ArrayList<S2Point>();
+        if (!parser.keyword("EMPTY")) {
+            int size = parser.readCoordinates();
+            if (size < 4) {
+                throw parser.error("Line string has less than 2 vertices");
+            }
+            for (int i = 0; i < size; i += 2) {
+                S2Point point = S2LatLng.fromDegrees(parser.coordinates[i + 1], parser.coordinates[i]).toPoint();
+                // GPS traces repeat samples, S2Polyline does not allow zero length edges
+                if (points.isEmpty() || !point.equals(points.get(points.size() - 1))) {
+                    points.add(point);
+                }
+            }
+        }
+        parser.expectEnd();
+        return points;
+    }
+
+    private void readPolygon(List<S2Loop> loops) {
+        expect('(');
+        do {
+            loops.add(readRing());
+        } while (next(','));
+        expect(')');
+    }
+
+    private S2Loop readRing() {
+        int size = readCoordinates();
+        // drop the closing vertex of the ring
+        if (size >= 4 && coordinates[0] == coordinates[size - 2] && coordinates[1] == coordinates[size - 1]) {
+            size -= 2;
+        }
+        if (size < 6) {
+            throw error("Ring has less than 3 vertices");
+        }
+        List<S2Point> points = new ArrayList<S2Point>(size / 2);
+        for (int i = 0; i < size; i += 2) {
+            points.add(S2LatLng.fromDegrees(coordinates[i + 1], coordinates[i]).toPoint());
+        }
+        S2Loop loop = new S2Loop(points);
+        // Normalize the loop, holes are told apart from shells by nesting
+        if (!loop.isNormalized()) {
+            loop.normalize();
+        }
+        return loop;
+    }
+
+    // skips the Z, M or ZM after a geometry type, the extra ordinates are skipped per vertex
+    private void dimensions() {
+        if (!keyword("ZM") && !keyword("Z")) {
+            keyword("M");
+        }
+    }
+
+    // reads "(x y, x y, ...)" into coordinates and returns the number of values read
+    private int readCoordinates() {
+        expect('(');
+        int size = 0;
+        do {
+            if (size + 2 > coordinates.length) {
+                coordinates = Arrays.copyOf(coordinates, coordinates.length * 2);
+            }
+            coordinates[size++] = readNumber();
+            coordinates[size++] = readNumber();
+            // Z and M ordinates
+            while (!peek(',') && !peek(')')) {
+                readNumber();
+            }
+        } while (next(','));
+        expect(')');
+        return size;
+    }
+
+    private double readNumber() {
+        skipWhitespace();
+        int start = position;
+        boolean negative = false;
+        if (position < wkt.length() && (wkt.getByte(position) == '-' || wkt.getByte(position) == '+')) {
+            negative = wkt.getByte(position) == '-';
+            position++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int fractionDigits = 0;
+        boolean exact = true;
+        boolean fraction = false;
+        while (position < wkt.length()) {
+            byte c = wkt.getByte(position);
+            if (c >= '0' && c <= '9') {
+                if (mantissa < MAX_EXACT_MANTISSA / 10) {
+                    mantissa = mantissa * 10 + (c - '0');
+                    if (fraction) fractionDigits++;
+                }
+                else if (!fraction || c != '0') {
+                    // trailing fraction zeros do not change the value
+                    exact = false;
+                }
+                digits++;
+            }
+            else if (c == '.' && !fraction) {
+                fraction = true;
+            }
+            else {
+                break;
+            }
+            position++;
+        }
+        if (digits == 0) {
+            throw error("Expected number");
+        }
+        if (position < wkt.length() && (wkt.getByte(position) == 'e' || wkt.getByte(position) == 'E')) {
+            exact = false;
+            position++;
+            if (position < wkt.length() && (wkt.getByte(position) == '-' || wkt.getByte(position) == '+')) {
+                position++;
+            }
+            while (position < wkt.length() && wkt.getByte(position) >= '0' && wkt.getByte(position) <= '9') {
+                position++;
+            }
+        }
+        if (exact && fractionDigits < POWERS_OF_TEN.length) {
+            // both operands are exact, so the division is correctly rounded like parseDouble
+            double value = mantissa / POWERS_OF_TEN[fractionDigits];
+            return negative ? -value : value;
+        }
+        try {
+            return Double.parseDouble(wkt.slice(start, position - start).toStringUtf8());
+        }
+        catch (NumberFormatException e) {
+            throw error("Invalid number");
+        }
+    }
+
+    private boolean keyword(String keyword) {
+        skipWhitespace();
+        int length = keyword.length();
+        if (position + length > wkt.length()) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (Character.toUpperCase(wkt.getByte(position + i)) != keyword.charAt(i)) {
+                return false;
+            }
+        }
+        int end = position + length;
+        if (end < wkt.length() && Character.isLetter(wkt.getByte(end))) {
+            return false;
+        }
+        position = end;
+        return true;
+    }
+
+    private boolean next(char c) {
+        skipWhitespace();
+        if (position < wkt.length() && wkt.getByte(position) == c) {
+            position++;
+            return true;
+        }
+        return false;
+    }
+
+    private boolean peek(char c) {
+        skipWhitespace();
+        return position < wkt.length() && wkt.getByte(position) == c;
+    }
+
+    private void expect(char c) {
+        if (!next(c)) {
+            throw error("Expected '" + c + "'");
+        }
+    }
+
+    private void expectEnd() {
+        skipWhitespace();
+        if (position != wkt.length()) {
+            throw error("Unexpected trailing characters");
+        }
+    }
+
+    private void skipWhitespace() {
+        while (position < wkt.length() && Character.isWhitespace(wkt.getByte(position))) {
+            position++;
+        }
+    }
+
+    private IllegalArgumentException error(String message) {
+        return new IllegalArgumentException(message + " at position " + position);
+    }
+}
@@ -0,0 +1,328 @@
+package io.trino.s2.geometry.functions;
+
+import com.google.common.geometry.S2Polygon;
+import io.airlift.slice.Slice;
+import io.trino.spi.block.Block;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static io.airlift.slice.Slices.utf8Slice;
+
+/**
+ * Throughput and allocation rate of the s2 functions.
+ *
+ * Run main from the IDE or with {@code mvn -Pbenchmark test-compile exec:exec}.
+ * {@code -Dbenchmark.save=file} stores the scores, {@code -Dbenchmark.baseline=file}
+ * compares against stored scores and fails when a benchmark regressed by more than
+ * {@code -Dbenchmark.threshold} (default 0.10).
+ */
+@State(Scope.Thread)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@BenchmarkMode(Mode.Throughput)
+@Fork(2)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class BenchmarkS2GeometryFunctions
+{
+    private static final int POSITIONS = 1024;
+    private static final int POLYGON_LEVEL = 14;
+
+    @State(Scope.Thread)
+    public static class PointData
+    {
+        @Param({"GLOBAL", "CITY"})
+        private String dataset;
+
+        private final double[] lats = new double[POSITIONS];
+        private final double[] lons = new double[POSITIONS];
+        private final Slice[] tokens = new Slice[POSITIONS];
+
+        @Setup
+        public void setup()
+        {
+            Random random = new Random(42);
+            for (int i = 0; i < POSITIONS; i++) {
+                if (dataset.equals("GLOBAL")) {
+                    lats[i] = Math.toDegrees(Math.asin(2 * random.nextDouble() - 1));
+                    lons[i] = 360 * random.nextDouble() - 180;
+                }
+                else {
+                    // Tel Aviv area, about 20km x 20km
+                    lats[i] = 32.0 + 0.2 * random.nextDouble();
+                    lons[i] = 34.7 + 0.2 * random.nextDouble();
+                }
+                tokens[i] = S2GeometryFunctions.s2Cell(lats[i], lons[i], 18);
+            }
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class PolygonData
+    {
+        @Param({"SMALL", "LARGE"})
+        private String polygon;
+
+        private Slice wkt;
+        private Block coverTokens;
+        private final double[] lats = new double[POSITIONS];
+        private final double[] lons = new double[POSITIONS];
+        private final Slice[] tokens = new Slice[POSITIONS];
+
+        @Setup
+        public void setup()
+        {
+            wkt = utf8Slice(circleWkt(32.1, 34.8, 0.1, polygon.equals("SMALL") ? 8 : 20_000));
+            coverTokens = S2GeometryFunctions.s2PolygonCover(wkt, POLYGON_LEVEL);
+
+            Random random = new Random(42);
+            for (int i = 0; i < POSITIONS; i++) {
+                lats[i] = 32.0 + 0.2 * random.nextDouble();
+                lons[i] = 34.7 + 0.2 * random.nextDouble();
+                tokens[i] = S2GeometryFunctions.s2Cell(lats[i], lons[i], 18);
+            }
+        }
+    }
+
+    // distinct zones of an overlap join, more than the prepared cache held as 1000 entries
+    @State(Scope.Thread)
+    public static class ZoneData
+    {
+        private static final int ZONES = 5000;
+
+        private final Slice[] zones = new Slice[ZONES];
+        private final int[] left = new int[POSITIONS];
+        private final int[] right = new int[POSITIONS];
+
+        @Setup
+        public void setup()
+        {
+            for (int i = 0; i < ZONES; i++) {
+                zones[i] = utf8Slice(circleWkt(32.0 + 0.005 * (i / 100), 34.5 + 0.005 * (i % 100), 0.004, 16));
+            }
+            Random random = new Random(42);
+            for (int i = 0; i < POSITIONS; i++) {
+                left[i] = random.nextInt(ZONES);
+                right[i] = random.nextInt(ZONES);
+            }
+        }
+    }
+
+    // Polygons and covers are cached by their wkt, without this state every invocation after
+    // the first would only measure a cache hit
+    @State(Scope.Thread)
+    public static class ColdCache
+    {
+        @Setup(Level.Invocation)
+        public void invalidate()
+        {
+            S2PolygonCache.invalidateAll();
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(POSITIONS)
+    public void s2Cell(PointData data, Blackhole blackhole)
+    {
+        for (int i = 0; i < POSITIONS; i++) {
+            blackhole.consume(S2GeometryFunctions.s2Cell(data.lats[i], data.lons[i], 16));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(POSITIONS)
+    public void s2Parent(PointData data, Blackhole blackhole)
+    {
+        for (int i = 0; i < POSITIONS; i++) {
+            blackhole.consume(S2GeometryFunctions.s2Parent(data.tokens[i]));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(POSITIONS)
+    public void s2Neighbors(PointData data, Blackhole blackhole)
+    {
+        for (int i = 0; i < POSITIONS; i++) {
+            blackhole.consume(S2GeometryFunctions.s2CellNeighbors(data.tokens[i], 18));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(POSITIONS)
+    public void s2RadiusCover(PointData data, Blackhole blackhole)
+    {
+        for (int i = 0; i < POSITIONS; i++) {
+            blackhole.consume(S2GeometryFunctions.s2CellCover(data.tokens[i], 500, 16));
+        }
+    }
+
+    @Benchmark
+    public S2Polygon s2ParseWktPolygon(PolygonData data)
+    {
+        return S2Helper.parseWktPolygon(data.wkt);
+    }
+
+    @Benchmark
+    public Block s2PolygonCover(PolygonData data, ColdCache cache)
+    {
+        return S2GeometryFunctions.s2PolygonCover(data.wkt, POLYGON_LEVEL);
+    }
+
+    // one polygon parsed and covered for every POSITIONS rows
+    @Benchmark
+    @OperationsPerInvocation(POSITIONS)
+    public void s2WithinPolygon(PolygonData data, ColdCache cache, Blackhole blackhole)
+    {
+        for (int i = 0; i < POSITIONS; i++) {
+            blackhole.consume(S2GeometryFunctions.s2Within(data.tokens[i], data.wkt, POLYGON_LEVEL));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(POSITIONS)
+    public void s2PolygonContainsPoint(PolygonData data, Blackhole blackhole)
+    {
+        for (int i = 0; i < POSITIONS; i++) {
+            blackhole.consume(S2GeometryFunctions.s2PolygonContainsPoint(data.wkt, data.lats[i], data.lons[i]));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(POSITIONS)
+    public void s2IntersectsZones(ZoneData data, Blackhole blackhole)
+    {
+        for (int i = 0; i < POSITIONS; i++) {
+            blackhole.consume(S2GeometryFunctions.s2Intersects(data.zones[data.left[i]], data.zones[data.right[i]]));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(POSITIONS)
+    public void s2WithinCells(PolygonData data, Blackhole blackhole)
+    {
+        for (int i = 0; i < POSITIONS; i++) {
+            blackhole.consume(S2GeometryFunctions.s2Within(data.tokens[i], data.coverTokens));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(POSITIONS)
+    public void s2WithinCell(PointData data, Blackhole blackhole)
+    {
+        for (int i = 0; i < POSITIONS; i++) {
+            blackhole.consume(S2GeometryFunctions.s2Within(data.tokens[i], data.tokens[POSITIONS - 1 - i]));
+        }
+    }
+
+    static String circleWkt(double lat, double lon, double radiusDegrees, int vertices)
+    {
+        StringBuilder wkt = new StringBuilder("POLYGON((");
+        for (int i = 0; i <= vertices; i++) {
+            double angle = 2 * Math.PI * (i % vertices) / vertices;
+            if (i > 0) {
+                wkt.append(", ");
+            }
+            wkt.append(lon + radiusDegrees * Math.cos(angle)).append(' ').append(lat + radiusDegrees * Math.sin(angle));
+        }
+        return wkt.append("))").toString();
+    }
+
+    public static void main(String[] args)
+            throws Exception
+    {
+        ChainedOptionsBuilder options = new OptionsBuilder()
+                .include(".*" + BenchmarkS2GeometryFunctions.class.getSimpleName() + ".*" + System.getProperty("benchmark.filter", ""))
+                .addProfiler(GCProfiler.class);
+        Collection<RunResult> results = new Runner(options.build()).run();
+
+        Map<String, Double> scores = scores(results);
+        // empty when the benchmark profile passes an unset property
+        String save = System.getProperty("benchmark.save", "");
+        if (!save.isEmpty()) {
+            List<String> lines = new ArrayList<>();
+            scores.forEach((name, score) -> lines.add(name + "," + score));
+            Files.write(Paths.get(save), lines);
+        }
+
+        String baseline = System.getProperty("benchmark.baseline", "");
+        if (!baseline.isEmpty()) {
+            double threshold = Double.parseDouble(System.getProperty("benchmark.threshold", "0.10"));
+            if (!compare(readScores(Paths.get(baseline)), scores, threshold)) {
+                System.exit(1);
+            }
+        }
+    }
+
+    private static Map<String, Double> scores(Collection<RunResult> results)
+    {
+        Map<String, Double> scores = new LinkedHashMap<>();
+        for (RunResult result : results) {
+            StringBuilder name = new StringBuilder(result.getParams().getBenchmark());
+            for (String key : result.getParams().getParamsKeys()) {
+                name.append(':').append(key).append('=').append(result.getParams().getParam(key));
+            }
+            scores.put(name.toString(), result.getPrimaryResult().getScore());
+        }
+        return scores;
+    }
+
+    private static Map<String, Double> readScores(Path path)
+            throws IOException
+    {
+        Map<String, Double> scores = new LinkedHashMap<>();
+        for (String line : Files.readAllLines(path)) {
+            int comma = line.lastIndexOf(',');
+            if (comma > 0) {
+                scores.put(line.substring(0, comma), Double.parseDouble(line.substring(comma + 1)));
+            }
+        }
+        return scores;
+    }
+
+    // throughput scores, lower than baseline is a regression
+    private static boolean compare(Map<String, Double> baseline, Map<String, Double> scores, double threshold)
+    {
+        boolean passed = true;
+        System.out.printf("%n%-90s %15s %15s %8s%n", "Benchmark", "Baseline", "Current", "Change");
+        for (Map.Entry<String, Double> entry : scores.entrySet()) {
+            Double previous = baseline.get(entry.getKey());
+            if (previous == null) {
+                System.out.printf("%-90s %15s %15.1f %8s%n", entry.getKey(), "-", entry.getValue(), "new");
+                continue;
+            }
+            double change = entry.getValue() / previous - 1;
+            boolean regressed = change < -threshold;
+            passed &= !regressed;
+            System.out.printf("%-90s %15.1f %15.1f %+7.1f%%%s%n", entry.getKey(), previous, entry.getValue(), 100 * change, regressed ? " REGRESSION" : "");
+        }
+        return passed;
+    }
+}
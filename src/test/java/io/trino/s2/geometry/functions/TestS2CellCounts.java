@@ -0,0 +1,44 @@
+package io.trino.s2.geometry.functions;
+
+import com.google.common.geometry.S2CellId;
+import org.junit.jupiter.api.Test;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class TestS2CellCounts
+{
+    @Test
+    public void testMatchesHashMap()
+    {
+        Random random = new Random(42);
+        S2CellCounts left = new S2CellCounts();
+        S2CellCounts right = new S2CellCounts();
+        Map<Long, Long> expected = new HashMap<>();
+        for (int i = 0; i < 50_000; i++) {
+            long leaf = S2Helper.cellId(random.nextDouble() * 180 - 90, random.nextDouble() * 360 - 180, S2CellId.MAX_LEVEL);
+            long id = S2Helper.parent(leaf, random.nextInt(8));
+            (random.nextBoolean() ? left : right).add(id, 1);
+            expected.merge(id, 1L, Long::sum);
+        }
+        left.addAll(S2CellCounts.deserialize(right.serialize()));
+
+        assertEquals(expected.size(), left.size());
+        List<Long> order = expected.keySet().stream()
+                .sorted(Comparator.<Long>comparingInt(S2Helper::level).thenComparing(Long::compareUnsigned))
+                .toList();
+        long[] ids = new long[left.size()];
+        long[] counts = new long[left.size()];
+        assertEquals(order.size(), left.sorted(ids, counts));
+        for (int i = 0; i < ids.length; i++) {
+            assertEquals((long) order.get(i), ids[i]);
+            assertEquals((long) expected.get(ids[i]), counts[i]);
+        }
+    }
+
+}
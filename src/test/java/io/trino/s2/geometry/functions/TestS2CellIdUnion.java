@@ -0,0 +1,65 @@
+package io.trino.s2.geometry.functions;
+
+import com.google.common.geometry.S2CellId;
+import com.google.common.geometry.S2CellUnion;
+import com.google.common.geometry.S2LatLng;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class TestS2CellIdUnion
+{
+    @Test
+    public void testMergeSiblings()
+    {
+        S2CellId cell = S2CellId.fromLatLng(S2LatLng.fromDegrees(32.1, 34.8)).parent(10);
+        S2CellIdUnion union = new S2CellIdUnion();
+        for (int i = 0; i < 4; i++) {
+            union.add(cell.child(i).id());
+            union.add(cell.child(i).child(2).id());
+        }
+        union.add(0L);
+
+        assertEquals(1, union.size());
+        assertEquals(cell.id(), union.cellId(0));
+    }
+
+    @Test
+    public void testMatchesCellUnion()
+    {
+        Random random = new Random(42);
+        for (int test = 0; test < 200; test++) {
+            S2CellId base = S2CellId.fromLatLng(S2LatLng.fromDegrees(random.nextDouble() * 180 - 90, random.nextDouble() * 360 - 180)).parent(random.nextInt(6));
+            S2CellIdUnion left = new S2CellIdUnion();
+            S2CellIdUnion right = new S2CellIdUnion();
+            List<S2CellId> cells = new ArrayList<>();
+            int count = random.nextInt(500);
+            for (int i = 0; i < count; i++) {
+                S2CellId cell = base;
+                for (int level = random.nextInt(5); level > 0; level--) {
+                    cell = cell.child(random.nextInt(4));
+                }
+                (random.nextBoolean() ? left : right).add(cell.id());
+                cells.add(cell);
+            }
+            left.addAll(right);
+
+            S2CellUnion expected = new S2CellUnion();
+            expected.initFromCellIds(new ArrayList<>(cells));
+            assertUnion(expected, left);
+            assertUnion(expected, S2CellIdUnion.deserialize(left.serialize()));
+        }
+    }
+
+    private static void assertUnion(S2CellUnion expected, S2CellIdUnion actual)
+    {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.cellId(i).id(), actual.cellId(i));
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package io.trino.s2.geometry.functions;
+
+import com.google.common.geometry.S2CellId;
+import com.google.common.geometry.S2CellUnion;
+import com.google.common.geometry.S2LatLng;
+import io.trino.spi.block.Block;
+import io.trino.spi.block.BlockBuilder;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static io.trino.spi.type.BigintType.BIGINT;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class TestS2CellRanges
+{
+    @Test
+    public void testMergeChildren()
+    {
+        S2CellId face = S2CellId.fromFace(5);
+        long[] ids = new long[4];
+        for (int i = 0; i < 4; i++) {
+            ids[i] = face.child(3 - i).id();
+        }
+        S2CellRanges ranges = S2CellRanges.fromCellIds(ids, 4);
+
+        assertEquals(1, ranges.numRanges());
+        assertEquals(face.rangeMin().id(), ranges.rangeMin(0));
+        assertEquals(face.rangeMax().id(), ranges.rangeMax(0));
+        assertTrue(ranges.contains(face.id()));
+        assertFalse(ranges.contains(S2CellId.fromFace(4).id()));
+        assertFalse(ranges.contains(0L));
+    }
+
+    @Test
+    public void testIntersectsRanges()
+    {
+        Random random = new Random(7);
+        for (int test = 0; test < 500; test++) {
+            S2CellId base = S2CellId.fromLatLng(S2LatLng.fromDegrees(random.nextDouble() * 180 - 90, random.nextDouble() * 360 - 180)).parent(random.nextInt(6));
+            S2CellUnion left = new S2CellUnion();
+            S2CellUnion right = new S2CellUnion();
+            long[] leftIds = randomCells(base, random, left);
+            long[] rightIds = randomCells(base, random, right);
+
+            assertEquals(left.intersects(right), S2CellRanges.fromCellIds(leftIds, leftIds.length).intersects(S2CellRanges.fromCellIds(rightIds, rightIds.length)));
+        }
+    }
+
+    private static long[] randomCells(S2CellId base, Random random, S2CellUnion union)
+    {
+        int count = random.nextInt(10);
+        long[] ids = new long[count];
+        ArrayList<S2CellId> cells = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            S2CellId cell = descendant(base, random, 1 + random.nextInt(5));
+            ids[i] = cell.id();
+            cells.add(cell);
+        }
+        union.initFromCellIds(cells);
+        return ids;
+    }
+
+    @Test
+    public void testSignedRanges()
+    {
+        Random random = new Random(11);
+        for (int test = 0; test < 500; test++) {
+            int count = random.nextInt(20);
+            long[] ids = new long[count];
+            for (int i = 0; i < count; i++) {
+                ids[i] = S2CellId.fromLatLng(S2LatLng.fromDegrees(random.nextDouble() * 180 - 90, random.nextDouble() * 360 - 180)).parent(random.nextInt(8)).id();
+            }
+            S2CellRanges ranges = S2CellRanges.fromCellIds(ids, count);
+            long[] signed = ranges.signedRanges();
+
+            for (int i = 0; i + 2 < signed.length; i += 2) {
+                assertTrue(signed[i] <= signed[i + 1]);
+                assertTrue(signed[i + 1] < signed[i + 2]);
+            }
+            for (int i = 0; i < signed.length; i++) {
+                assertTrue(ranges.contains(signed[i] | 1));
+            }
+            for (int query = 0; query < 100; query++) {
+                long leaf = S2CellId.fromLatLng(S2LatLng.fromDegrees(random.nextDouble() * 180 - 90, random.nextDouble() * 360 - 180)).id();
+                assertEquals(ranges.contains(leaf), inSigned(signed, leaf));
+            }
+        }
+    }
+
+    @Test
+    public void testSignedRangesAcrossFaces()
+    {
+        long lastOfFace3 = S2CellId.fromFace(3).rangeMax().id();
+        long firstOfFace4 = S2CellId.fromFace(4).rangeMin().id();
+        S2CellRanges ranges = S2CellRanges.fromCellIds(new long[] {lastOfFace3, firstOfFace4}, 2);
+        assertEquals(1, ranges.numRanges());
+
+        assertArrayEquals(new long[] {firstOfFace4, firstOfFace4, lastOfFace3, lastOfFace3}, ranges.signedRanges());
+        assertEquals(0, S2CellRanges.fromCellIds(new long[0], 0).signedRanges().length);
+    }
+
+    private static boolean inSigned(long[] signed, long id)
+    {
+        for (int i = 0; i < signed.length; i += 2) {
+            if (signed[i] <= id && id <= signed[i + 1]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Test
+    public void testMatchesCellUnion()
+    {
+        Random random = new Random(42);
+        for (int test = 0; test < 500; test++) {
+            S2CellId base = S2CellId.fromLatLng(S2LatLng.fromDegrees(random.nextDouble() * 180 - 90, random.nextDouble() * 360 - 180)).parent(random.nextInt(6));
+            int count = random.nextInt(50);
+            long[] ids = new long[count];
+            List<S2CellId> cells = new ArrayList<>();
+            for (int i = 0; i < count; i++) {
+                S2CellId cell = descendant(base, random, 1 + random.nextInt(4));
+                ids[i] = cell.id();
+                cells.add(cell);
+            }
+            S2CellUnion union = new S2CellUnion();
+            union.initFromCellIds(new ArrayList<>(cells));
+            S2CellRanges ranges = S2CellRanges.fromCellIds(ids, count);
+
+            for (int query = 0; query < 100; query++) {
+                S2CellId cell = descendant(base, random, random.nextInt(6));
+                assertEquals(union.contains(cell), ranges.contains(cell.id()));
+                assertEquals(union.intersects(cell), ranges.intersects(cell.id()));
+            }
+        }
+    }
+
+    private static S2CellId descendant(S2CellId cell, Random random, int levels)
+    {
+        for (int i = 0; i < levels && !cell.isLeaf(); i++) {
+            cell = cell.child(random.nextInt(4));
+        }
+        return cell;
+    }
+
+    @Test
+    public void testCachesRepeatedBlocks()
+    {
+        Block cells = idBlock(1000);
+        long inside = S2Helper.cellId(32.5, 34.8, 20);
+
+        // built the first time, kept once the block comes again
+        S2CellRanges first = S2CellRanges.fromIdBlock(cells);
+        S2CellRanges second = S2CellRanges.fromIdBlock(cells);
+        assertNotSame(first, second);
+        assertSame(second, S2CellRanges.fromIdBlock(cells));
+        assertArrayEquals(first.signedRanges(), second.signedRanges());
+        assertEquals(first.contains(inside), second.contains(inside));
+
+        // small blocks are never cached
+        Block small = idBlock(10);
+        assertNotSame(S2CellRanges.fromIdBlock(small), S2CellRanges.fromIdBlock(small));
+        assertNotSame(S2CellRanges.fromIdBlock(small), S2CellRanges.fromIdBlock(small));
+    }
+
+    private static Block idBlock(int size)
+    {
+        BlockBuilder builder = BIGINT.createBlockBuilder(null, size);
+        for (int i = 0; i < size; i++) {
+            BIGINT.writeLong(builder, S2Helper.cellId(32.0 + i / 1000.0, 34.8, 16));
+        }
+        return builder.build();
+    }
+}
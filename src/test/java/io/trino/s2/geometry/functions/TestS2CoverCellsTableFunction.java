@@ -0,0 +1,57 @@
+package io.trino.s2.geometry.functions;
+
+import io.trino.sql.query.QueryAssertions;
+import io.trino.testing.DistributedQueryRunner;
+import io.trino.testing.QueryRunner;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+
+import static io.trino.testing.TestingSession.testSessionBuilder;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.TestInstance.Lifecycle.PER_CLASS;
+
+@TestInstance(PER_CLASS)
+public class TestS2CoverCellsTableFunction
+{
+    // shell with a hole around its center
+    private static final String POLYGON = "'POLYGON((34.7 32.0, 34.9 32.0, 34.9 32.2, 34.7 32.2, 34.7 32.0), (34.78 32.08, 34.78 32.12, 34.82 32.12, 34.82 32.08, 34.78 32.08))'";
+
+    private final QueryAssertions assertions;
+
+    // handles and splits go through JSON to the worker
+    public TestS2CoverCellsTableFunction()
+            throws Exception
+    {
+        QueryRunner runner = DistributedQueryRunner.builder(testSessionBuilder().build()).build();
+        runner.installPlugin(new S2GeometryFunctionsPlugin());
+        runner.createCatalog("s2", "s2");
+        assertions = new QueryAssertions(runner);
+    }
+
+    @AfterAll
+    public void teardown()
+    {
+        assertions.close();
+    }
+
+    @Test
+    public void testMatchesPolygonCover()
+    {
+        assertThat(assertions.query(
+                "SELECT s2_cover_agg(cell_id) FROM TABLE(s2.system.s2_cover_cells(" + POLYGON + ", 10, 14))"))
+                .matches("VALUES s2_polygon_cover_ids(" + POLYGON + ", 10, 14, 2147483647, 1)");
+
+        assertThat(assertions.query(
+                "SELECT count(*) FROM TABLE(s2.system.s2_cover_cells(" + POLYGON + ", 14, 14)) WHERE cell_id <> s2_token_to_id(cell)"))
+                .matches("VALUES BIGINT '0'");
+    }
+
+    @Test
+    public void testInvalidPolygon()
+    {
+        assertThat(assertions.query(
+                "SELECT count(*) FROM TABLE(s2.system.s2_cover_cells('POLYGON((', 10, 14))"))
+                .matches("VALUES BIGINT '0'");
+    }
+}
@@ -7,6 +7,8 @@ import org.junit.jupiter.api.TestInstance;
 import org.junit.jupiter.api.parallel.Execution;
 import org.testcontainers.shaded.com.google.common.collect.ImmutableList;
 
+import java.util.Arrays;
+
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.jupiter.api.TestInstance.Lifecycle.PER_CLASS;
 import static org.junit.jupiter.api.parallel.ExecutionMode.CONCURRENT;
@@ -44,6 +46,10 @@ public class TestS2Functions
                 "s2_cell(-61.326853510565,0)"))
                 .isEqualTo("b760000000000001");
 
+        assertThat(assertions.expression(
+                "s2_cells(array[32.15091, -61.326853510565, NULL], array[34.848075, 0, 1], 30)"))
+                .isEqualTo(Arrays.asList("151d4816371ba05b", "b760000000000001", null));
+
         assertThat(assertions.expression(
                 "s2_level(s2_cell(32.15091, 34.848075))"))
                 .isEqualTo(30);
@@ -72,5 +78,346 @@ public class TestS2Functions
                 "s2_within('14e64ad5', array['151d387809', '151d387875'])"))
                 .isEqualTo(false);
 
+        assertThat(assertions.expression(
+                "s2_within('14e64ad5', s2_childs('14e64ad5'))"))
+                .isEqualTo(true);
+
+        assertThat(assertions.expression(
+                "s2_contains(array['14e64ad44', '14e64ad4c', NULL], '14e64ad44')"))
+                .isEqualTo(true);
+
+    }
+
+    @Test
+    public void testS2CellIdFunctions()
+    {
+        assertThat(assertions.expression(
+                "s2_cell_id(32.15091, 34.848075)"))
+                .isEqualTo(1521451509372133467L);
+
+        assertThat(assertions.expression(
+                "s2_cell_id(32.15091, 34.848075, 15)"))
+                .isEqualTo(1521451509521317888L);
+
+        assertThat(assertions.expression(
+                "s2_cell_ids(array[32.15091, 32.15091], array[34.848075, 34.848075], 15)"))
+                .isEqualTo(ImmutableList.of(1521451509521317888L, 1521451509521317888L));
+
+        assertThat(assertions.expression(
+                "s2_token_to_id('151d48164')"))
+                .isEqualTo(1521451509521317888L);
+
+        assertThat(assertions.expression(
+                "s2_id_to_token(s2_cell_id(-61.326853510565, 0))"))
+                .isEqualTo("b760000000000001");
+
+        assertThat(assertions.expression(
+                "s2_id_to_token(s2_parent(s2_token_to_id('151d48164')))"))
+                .isEqualTo("151d4817");
+
+        assertThat(assertions.expression(
+                "s2_level(s2_cell_id(32.15091, 34.848075, 15))"))
+                .isEqualTo(15);
+
+        assertThat(assertions.expression(
+                "s2_level(BIGINT '0')"))
+                .isEqualTo(-1);
+
+        assertThat(assertions.expression(
+                "s2_childs(s2_token_to_id('14e64ad5'))"))
+                .isEqualTo(ImmutableList.of(1505973400869273600L, 1505973403016757248L, 1505973405164240896L, 1505973407311724544L));
+
+        assertThat(assertions.expression(
+                "s2_neighbors(s2_token_to_id('14e64ad5'), 14)"))
+                .isEqualTo(ImmutableList.of(1505973386910629888L, 1505973764867751936L, 1505973412680433664L, 1506371796666941440L, 1505973395500564480L, 1505973773457686528L, 1506371805256876032L, 1506371427299753984L));
+
+        assertThat(assertions.expression(
+                "s2_within(s2_token_to_id('14e64ad44'), s2_token_to_id('14e64ad5'))"))
+                .isEqualTo(true);
+
+        assertThat(assertions.expression(
+                "s2_contains(s2_token_to_id('14e64ad44'), s2_token_to_id('14e64ad5'))"))
+                .isEqualTo(false);
+
+        assertThat(assertions.expression(
+                "s2_within(s2_token_to_id('14e64ad5'), array[s2_token_to_id('151d387809'), s2_token_to_id('151d387875')])"))
+                .isEqualTo(false);
+
+        assertThat(assertions.expression(
+                "s2_contains(s2_childs(s2_token_to_id('14e64ad5')), s2_token_to_id('14e64ad5'))"))
+                .isEqualTo(true);
+    }
+
+    @Test
+    public void testS2PolygonCoverMaxCells()
+    {
+        String polygon = "'POLYGON((34.838904201049786 32.20971209756635,34.872249873168926 32.209530543414715,34.86379599999998 32.201796,34.85705829095457 32.17288947432473,34.838904201049786 32.20971209756635))'";
+
+        assertThat(assertions.expression(
+                "cardinality(s2_polygon_cover(" + polygon + ", 0, 30, 20)) <= 20"))
+                .isEqualTo(true);
+
+        assertThat(assertions.expression(
+                "cardinality(s2_polygon_cover_ids(" + polygon + ", 0, 30, 20, 2)) <= 20"))
+                .isEqualTo(true);
+
+        assertThat(assertions.expression(
+                "all_match(s2_polygon_interior_cover(" + polygon + ", 16), c -> s2_within(c, s2_polygon_cover(" + polygon + ", 16)))"))
+                .isEqualTo(true);
+
+        assertThat(assertions.expression(
+                "cardinality(s2_polygon_interior_cover(" + polygon + ", 16)) < cardinality(s2_polygon_cover(" + polygon + ", 16))"))
+                .isEqualTo(true);
+
+        assertThat(assertions.expression(
+                "s2_polygon_cover(" + polygon + ", 0, 30, 0)"))
+                .isNull();
+    }
+
+    @Test
+    public void testS2PolygonContainsPoint()
+    {
+        String polygon = "'POLYGON((34.7 32.0, 34.9 32.0, 34.9 32.2, 34.7 32.2, 34.7 32.0), (34.78 32.08, 34.78 32.12, 34.82 32.12, 34.82 32.08, 34.78 32.08))'";
+
+        assertThat(assertions.expression(
+                "s2_polygon_contains_point(" + polygon + ", 32.05, 34.75)"))
+                .isEqualTo(true);
+
+        assertThat(assertions.expression(
+                "s2_polygon_contains_point(" + polygon + ", 32.1, 34.8)"))
+                .isEqualTo(false);
+
+        assertThat(assertions.expression(
+                "s2_polygon_contains_point(" + polygon + ", s2_cell(32.05, 34.75, 16))"))
+                .isEqualTo(true);
+
+        assertThat(assertions.expression(
+                "s2_polygon_contains_point(" + polygon + ", s2_cell_id(32.1, 34.8, 16))"))
+                .isEqualTo(false);
+
+        assertThat(assertions.expression(
+                "s2_polygon_contains_point('POLYGON((1 2))', 2.0, 1.0)"))
+                .isEqualTo(false);
+    }
+
+    @Test
+    public void testS2PolygonEncode()
+    {
+        String polygon = "'POLYGON((34.838904201049786 32.20971209756635,34.872249873168926 32.209530543414715,34.86379599999998 32.201796,34.85705829095457 32.17288947432473,34.838904201049786 32.20971209756635))'";
+        String encoded = "s2_polygon_encode(" + polygon + ")";
+
+        assertThat(assertions.expression(
+                "s2_polygon_cover(" + encoded + ", 16) = s2_polygon_cover(" + polygon + ", 16)"))
+                .isEqualTo(true);
+
+        assertThat(assertions.expression(
+                "s2_polygon_cover_ids(" + encoded + ", 10, 16, 20) = s2_polygon_cover_ids(" + polygon + ", 10, 16, 20)"))
+                .isEqualTo(true);
+
+        assertThat(assertions.expression(
+                "s2_polygon_interior_cover(" + encoded + ", 16) = s2_polygon_interior_cover(" + polygon + ", 16)"))
+                .isEqualTo(true);
+
+        assertThat(assertions.expression(
+                "s2_within(s2_cell(32.2, 34.86, 16), " + encoded + ", 16)"))
+                .isEqualTo(true);
+
+        assertThat(assertions.expression(
+                "s2_contains(" + encoded + ", s2_cell_id(32.0, 34.86, 16), 16)"))
+                .isEqualTo(false);
+
+        assertThat(assertions.expression(
+                "s2_polygon_contains_point(" + encoded + ", 32.2, 34.86)"))
+                .isEqualTo(true);
+
+        assertThat(assertions.expression(
+                "s2_polygon_cover(X'00', 16)"))
+                .isNull();
+    }
+
+    @Test
+    public void testS2CellRange()
+    {
+        assertThat(assertions.expression("s2_cell_range_min('14e64ad5') < s2_token_to_id('14e64ad5') AND s2_token_to_id('14e64ad5') < s2_cell_range_max('14e64ad5')"))
+                .isEqualTo(true);
+        assertThat(assertions.expression("s2_cell_range_min(s2_token_to_id('14e64ad5')) = s2_cell_range_min('14e64ad5')"))
+                .isEqualTo(true);
+        assertThat(assertions.expression("s2_cell_range_max(s2_cell_id(32.1, 34.8)) = s2_cell_id(32.1, 34.8)"))
+                .isEqualTo(true);
+        assertThat(assertions.expression("s2_cell_range_min(0)"))
+                .isNull();
+    }
+
+    @Test
+    public void testS2PolygonCoverBounds()
+    {
+        String a = "'POLYGON((34.7 32.0, 34.9 32.0, 34.9 32.2, 34.7 32.2, 34.7 32.0))'";
+
+        assertThat(assertions.expression("s2_polygon_cover_bounds(" + a + ", 10).range_min = array_min(transform(s2_polygon_cover(" + a + ", 10), c -> s2_cell_range_min(c)))"))
+                .isEqualTo(true);
+        assertThat(assertions.expression("s2_polygon_cover_bounds(" + a + ", 10).range_max = array_max(transform(s2_polygon_cover(" + a + ", 10), c -> s2_cell_range_max(c)))"))
+                .isEqualTo(true);
+        assertThat(assertions.expression("all_match(s2_polygon_cover(" + a + ", 10), c -> any_match(s2_polygon_cover_bounds(" + a + ", 10).ranges, r -> s2_token_to_id(c) BETWEEN r.range_min AND r.range_max))"))
+                .isEqualTo(true);
+        assertThat(assertions.expression("s2_polygon_cover_bounds('POLYGON((1 2))', 10)"))
+                .isNull();
+    }
+
+    @Test
+    public void testS2Intersects()
+    {
+        String a = "'POLYGON((34.7 32.0, 34.9 32.0, 34.9 32.2, 34.7 32.2, 34.7 32.0))'";
+        String b = "'POLYGON((34.8 32.1, 35.0 32.1, 35.0 32.3, 34.8 32.3, 34.8 32.1))'";
+        String c = "'POLYGON((35.1 32.0, 35.2 32.0, 35.2 32.1, 35.1 32.1, 35.1 32.0))'";
+
+        assertThat(assertions.expression("s2_intersects(" + a + ", " + b + ")"))
+                .isEqualTo(true);
+        assertThat(assertions.expression("s2_intersects(" + a + ", " + c + ")"))
+                .isEqualTo(false);
+        assertThat(assertions.expression("s2_intersection_area(" + a + ", " + c + ")"))
+                .isEqualTo(0.0);
+        assertThat(assertions.expression("abs(s2_intersection_area(" + a + ", " + b + ") * 4 / s2_area(" + a + ") - 1) < 0.01"))
+                .isEqualTo(true);
+        assertThat(assertions.expression("s2_area(" + a + ") BETWEEN 4.1e8 AND 4.2e8"))
+                .isEqualTo(true);
+        assertThat(assertions.expression("s2_intersects(s2_polygon_encode(" + a + "), s2_polygon_encode(" + b + "))"))
+                .isEqualTo(true);
+        assertThat(assertions.expression("s2_area('POLYGON((1 2))')"))
+                .isNull();
+        assertThat(assertions.expression("s2_intersection_area(" + a + ", 'POLYGON((1 2))')"))
+                .isNull();
+        assertThat(assertions.expression("s2_area(s2_polygon_encode('POLYGON EMPTY'))"))
+                .isNull();
+    }
+
+    @Test
+    public void testS2UnionCover()
+    {
+        String a = "'POLYGON((34.7 32.0, 34.9 32.0, 34.9 32.2, 34.7 32.2, 34.7 32.0))'";
+        String b = "'POLYGON((34.8 32.1, 35.0 32.1, 35.0 32.3, 34.8 32.3, 34.8 32.1))'";
+
+        assertThat(assertions.expression("s2_union_cover(array[" + a + ", " + a + ", NULL], 10) = s2_polygon_cover(" + a + ", 10)"))
+                .isEqualTo(true);
+        assertThat(assertions.expression("cardinality(s2_union_cover(array[" + a + ", " + b + "], 10)) < cardinality(s2_polygon_cover(" + a + ", 10)) + cardinality(s2_polygon_cover(" + b + ", 10))"))
+                .isEqualTo(true);
+        assertThat(assertions.expression("s2_union_cover_ids(array[" + a + "], 10) = s2_polygon_cover_ids(" + a + ", 10)"))
+                .isEqualTo(true);
+    }
+
+    @Test
+    public void testS2CellHierarchy()
+    {
+        assertThat(assertions.expression(
+                "s2_cell_hierarchy(32.1, 34.8, 14, 16)"))
+                .isEqualTo(ImmutableList.of("151d4bdd", "151d4bdc4", "151d4bdc3"));
+
+        assertThat(assertions.expression(
+                "s2_cell_id_hierarchy(32.1, 34.8, 12, 16) = transform(sequence(12, 16), l -> s2_cell_id(32.1, 34.8, l))"))
+                .isEqualTo(true);
+
+        assertThat(assertions.expression(
+                "s2_cell_hierarchy(32.1, 34.8, 16, 14)"))
+                .isNull();
+    }
+
+    @Test
+    public void testS2LineCover()
+    {
+        String line = "'LINESTRING(34.8 32.1, 34.9 32.2, 35.0 32.15)'";
+
+        assertThat(assertions.expression(
+                "s2_line_cover(" + line + ", 12) = transform(s2_line_cover_ids(" + line + ", 12), id -> s2_id_to_token(id))"))
+                .isEqualTo(true);
+
+        assertThat(assertions.expression(
+                "s2_line_cover('LINESTRING(34.8 32.1, 34.8 32.1)', 16)"))
+                .isEqualTo(ImmutableList.of("151d4bdc3"));
+
+        assertThat(assertions.expression(
+                "s2_line_cover('LINESTRING EMPTY', 12)"))
+                .isNull();
+
+        assertThat(assertions.expression(
+                "s2_line_cover(" + line + ", 31)"))
+                .isNull();
+    }
+
+    @Test
+    public void testS2TrajectoryCells()
+    {
+        assertThat(assertions.expression(
+                "s2_trajectory_cells(array[32.1, 32.1, NULL, 32.1], array[34.8, 34.8, 34.8, 34.8], 16)"))
+                .isEqualTo(ImmutableList.of("151d4bdc3"));
+
+        // the cells between samples are the cells the line between them passes through
+        assertThat(assertions.expression(
+                "array_sort(s2_trajectory_cell_ids(array[32.1, 32.2], array[34.8, 34.9], 12)) = s2_line_cover_ids('LINESTRING(34.8 32.1, 34.9 32.2)', 12)"))
+                .isEqualTo(true);
+
+        assertThat(assertions.expression(
+                "cardinality(s2_trajectory_cells(array[32.1, 32.2], array[34.8, 34.9], 12)) > cardinality(array_distinct(s2_cells(array[32.1, 32.2], array[34.8, 34.9], 12)))"))
+                .isEqualTo(true);
+
+        assertThat(assertions.expression(
+                "s2_trajectory_cells(array[32.1], array[34.8], 31)"))
+                .isNull();
+    }
+
+    @Test
+    public void testS2CellHierarchyAgg()
+    {
+        assertThat(assertions.query(
+                "SELECT transform(s2_cell_hierarchy_agg(lat, lon, 12, 13), r -> ROW(s2_id_to_token(r.cell), r.count)) FROM (VALUES (32.1, 34.8), (32.1, 34.8), (32.0, 34.8)) AS t(lat, lon)"))
+                .matches("VALUES ARRAY[ROW('1502b4f', BIGINT '1'), ROW('151d4bd', BIGINT '2'), ROW('1502b4ec', BIGINT '1'), ROW('151d4bdc', BIGINT '2')]");
+    }
+
+    @Test
+    public void testS2Nearest()
+    {
+        String cells = "array[s2_cell(32.0, 34.8, 16), s2_cell(32.1, 34.8, 16), s2_cell(33.0, 34.8, 16), NULL]";
+
+        assertThat(assertions.expression(
+                "transform(s2_nearest(32.09, 34.8, " + cells + ", 2), r -> r.cell)"))
+                .isEqualTo(ImmutableList.of("151d4bdc3", "1502b4ec7"));
+
+        assertThat(assertions.expression(
+                "s2_nearest(32.09, 34.8, " + cells + ", 1)[1].distance = s2_distance(s2_cell(32.1, 34.8, 16), 32.09, 34.8)"))
+                .isEqualTo(true);
+
+        assertThat(assertions.expression(
+                "cardinality(s2_nearest(32.09, 34.8, transform(" + cells + ", c -> s2_token_to_id(c)), 10))"))
+                .isEqualTo(3);
+
+        assertThat(assertions.expression(
+                "s2_nearest(32.09, 34.8, " + cells + ", 0)"))
+                .isNull();
+    }
+
+    @Test
+    public void testS2NearestAgg()
+    {
+        assertThat(assertions.query(
+                "SELECT transform(s2_nearest_agg(c, 32.09, 34.8, 2), r -> r.cell) FROM UNNEST(array[s2_cell(32.0, 34.8, 16), s2_cell(32.1, 34.8, 16), s2_cell(33.0, 34.8, 16)]) AS t(c)"))
+                .matches("VALUES CAST(ARRAY['151d4bdc3', '1502b4ec7'] AS array(varchar))");
+
+        assertThat(assertions.query(
+                "SELECT transform(s2_nearest_agg(s2_token_to_id(c), 32.09, 34.8, 1), r -> s2_id_to_token(r.cell)) FROM UNNEST(array[s2_cell(32.0, 34.8, 16), s2_cell(32.1, 34.8, 16)]) AS t(c)"))
+                .matches("VALUES CAST(ARRAY['151d4bdc3'] AS array(varchar))");
+    }
+
+    @Test
+    public void testS2CoverAgg()
+    {
+        assertThat(assertions.query(
+                "SELECT s2_cover_agg(c) FROM UNNEST(s2_childs('14e64ad5')) AS t(c)"))
+                .matches("VALUES CAST(ARRAY['14e64ad5'] AS array(varchar))");
+
+        assertThat(assertions.query(
+                "SELECT s2_cover_agg(c, 5) FROM UNNEST(array[s2_token_to_id('14e64ad5'), s2_token_to_id('14e5'), s2_cell_id(32.15091, 34.848075)]) AS t(c)"))
+                .matches("VALUES ARRAY[s2_token_to_id('14e4'), s2_token_to_id('151c')]");
+
+        assertThat(assertions.query(
+                "SELECT s2_cover_agg(c) FROM (VALUES CAST(NULL AS bigint)) AS t(c)"))
+                .matches("VALUES CAST(NULL AS array(bigint))");
     }
-}
\ No newline at end of file
+}
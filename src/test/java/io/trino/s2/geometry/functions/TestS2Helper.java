@@ -1,10 +1,36 @@
 package io.trino.s2.geometry.functions;
 
+import com.google.common.geometry.S2Cap;
+import com.google.common.geometry.S2CellId;
+import com.google.common.geometry.S2CellUnion;
+import com.google.common.geometry.S2LatLng;
+import com.google.common.geometry.S2Loop;
+import com.google.common.geometry.S2Point;
 import com.google.common.geometry.S2Polygon;
+import com.google.common.geometry.S2Polyline;
 import com.google.common.geometry.S2Region;
+import com.google.common.geometry.S2RegionCoverer;
+import io.airlift.slice.Slice;
+import io.airlift.slice.Slices;
+import io.trino.spi.TrinoException;
+import io.trino.spi.block.Block;
+import io.trino.spi.block.BlockBuilder;
 import org.junit.jupiter.api.Test;
 
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static io.airlift.slice.Slices.utf8Slice;
+import static io.trino.spi.type.BigintType.BIGINT;
+import static io.trino.spi.type.DoubleType.DOUBLE;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
 
 public class TestS2Helper
 {
@@ -26,4 +52,319 @@ public class TestS2Helper
                 ">\n";
         assertEquals(s2Region.toString(), expected);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testParseWktPolygonMatchesRegex()
+    {
+        String[] polygons = {
+                "POLYGON((  35.2874851279194  33.0771839289384 , 35.2997589163715 33.0788380879624,35.301475530141 33.0697038650441,35.2871418051654 33.0690565219247,35.2874851279194 33.0771839289384))",
+                "polygon ((34.838904201049786 32.20971209756635,34.872249873168926 32.209530543414715,34.86379599999998 32.201796,34.85705829095457 32.17288947432473,34.85730482936083 32.17823824530681,34.85220840740965 32.17897379025877,34.85226182676695 32.17947323097507,34.841436206359845 32.19085065642912,34.838904201049786 32.20971209756635))",
+                "POLYGON((79.353781784841460000000000000 21.230046625568562000000000000,79.350476393767820000000000000 21.232411200843462000000000000,79.346512273403100000000000000 21.233700093104580000000000000,79.353781784841460000000000000 21.230046625568562000000000000))",
+                "POLYGON((-0.5 -0.5, 0.5 -0.5, 0.5 0.5, -0.5 0.5, -0.5 -0.5))",
+                "POLYGON((37.2419964 55.69297, 37.2419964   ))",
+                "POLYGON((1 2, 3 4))",
+        };
+        for (String polygon : polygons) {
+            assertEquals(S2Helper.parseWktPolygonRegex(polygon).toString(), S2Helper.parseWktPolygon(polygon).toString());
+        }
+    }
+
+    @Test
+    public void testParseWktPolygonWithHole()
+    {
+        S2Polygon polygon = S2Helper.parseWktPolygon("POLYGON((0 0, 10 0, 10 10, 0 10, 0 0), (4 4, 6 4, 6 6, 4 6, 4 4))");
+
+        assertEquals(2, polygon.numLoops());
+        assertTrue(polygon.contains(S2LatLng.fromDegrees(2, 2).toPoint()));
+        assertFalse(polygon.contains(S2LatLng.fromDegrees(5, 5).toPoint()));
+        assertFalse(polygon.contains(S2LatLng.fromDegrees(20, 20).toPoint()));
+    }
+
+    @Test
+    public void testParseWktPolygonZM()
+    {
+        String polygon = "POLYGON((0 0, 10 0, 10 10, 0 10, 0 0), (4 4, 6 4, 6 6, 4 6, 4 4))";
+        String expected = S2Helper.parseWktPolygon(polygon).toString();
+
+        assertEquals(expected, S2Helper.parseWktPolygon("POLYGON((0 0 1, 10 0 2, 10 10 3, 0 10 4, 0 0 1), (4 4 0, 6 4 0, 6 6 0, 4 6 0, 4 4 0))").toString());
+        assertEquals(expected, S2Helper.parseWktPolygon("POLYGON Z ((0 0 1, 10 0 2, 10 10 3, 0 10 4, 0 0 1), (4 4 0, 6 4 0, 6 6 0, 4 6 0, 4 4 0))").toString());
+        assertEquals(expected, S2Helper.parseWktPolygon("POLYGON ZM ((0 0 1 5,10 0 2 5,10 10 3 5,0 10 4 5,0 0 1 5),(4 4 0 1,6 4 0 1,6 6 0 1,4 6 0 1,4 4 0 1))").toString());
+        assertEquals(1, S2Helper.parseWktPolygon("MULTIPOLYGON M (((0 0 7, 1 0 7, 1 1 7, 0 1 7, 0 0 7)))").numLoops());
+        assertEquals(3, S2Helper.parseWktLineString(utf8Slice("LINESTRING Z (34.8 32.1 10, 34.9 32.2 12, 35 32.2 9)")).numVertices());
+        // still numbers
+        assertEquals(0, S2Helper.parseWktPolygon("POLYGON((0 0 x, 10 0, 10 10, 0 0))").numLoops());
+    }
+
+    @Test
+    public void testParseWktMultiPolygon()
+    {
+        S2Polygon polygon = S2Helper.parseWktPolygon("MULTIPOLYGON(((0 0, 1 0, 1 1, 0 1, 0 0)), ((5 5, 6 5, 6 6, 5 6, 5 5)))");
+
+        assertEquals(2, polygon.numLoops());
+        assertTrue(polygon.contains(S2LatLng.fromDegrees(0.5, 0.5).toPoint()));
+        assertTrue(polygon.contains(S2LatLng.fromDegrees(5.5, 5.5).toPoint()));
+        assertFalse(polygon.contains(S2LatLng.fromDegrees(3, 3).toPoint()));
+
+        assertEquals(new S2Polygon().toString(), S2Helper.parseWktPolygon("MULTIPOLYGON(((0 0, 1 0, 1 1, 0 1, 0 0))) trailing").toString());
+        assertEquals(new S2Polygon().toString(), S2Helper.parseWktPolygon("POLYGON EMPTY").toString());
+    }
+
+    @Test
+    public void testEncodePolygon()
+    {
+        for (String wkt : List.of(
+                "POLYGON((0 0, 10 0, 10 10, 0 10, 0 0), (4 4, 6 4, 6 6, 4 6, 4 4))",
+                "MULTIPOLYGON(((0 0, 1 0, 1 1, 0 1, 0 0)), ((5 5, 6 5, 6 6, 5 6, 5 5)))",
+                "POLYGON((34.838904201049786 32.20971209756635,34.872249873168926 32.209530543414715,34.86379599999998 32.201796,34.85705829095457 32.17288947432473,34.838904201049786 32.20971209756635))",
+                "POLYGON EMPTY")) {
+            S2Polygon polygon = S2Helper.parseWktPolygon(wkt);
+            S2Polygon decoded = S2Helper.decodePolygon(S2Helper.encodePolygon(polygon));
+            assertEquals(polygon, decoded);
+            assertEquals(S2Helper.cover(polygon, 4, 16), S2Helper.cover(decoded, 4, 16));
+        }
+
+        assertEquals(0, S2Helper.decodePolygon(utf8Slice("POLYGON((0 0, 1 0, 1 1, 0 0))")).numLoops());
+    }
+
+    @Test
+    public void testDecodeCompressedPolygon()
+    {
+        // vertices at cell centers are encoded compressed
+        List<S2Point> points = new ArrayList<>();
+        for (double[] vertex : new double[][] {{32.0, 34.7}, {32.0, 34.9}, {32.2, 34.9}, {32.2, 34.7}}) {
+            points.add(S2CellId.fromLatLng(S2LatLng.fromDegrees(vertex[0], vertex[1])).parent(12).toPoint());
+        }
+        S2Loop loop = new S2Loop(points);
+        loop.normalize();
+        S2Polygon polygon = new S2Polygon(loop);
+        Slice encoded = S2Helper.encodePolygon(polygon);
+        assertEquals(4, encoded.getByte(0));
+        assertEquals(polygon, S2Helper.decodePolygon(encoded));
+    }
+
+    @Test
+    public void testDecodeMalformedPolygon()
+    {
+        // truncated headers
+        assertEquals(0, S2Helper.decodePolygon(Slices.wrappedBuffer()).numLoops());
+        assertEquals(0, S2Helper.decodePolygon(Slices.wrappedBuffer(new byte[] {1, 0, 0})).numLoops());
+        assertEquals(0, S2Helper.decodePolygon(Slices.wrappedBuffer(new byte[] {1, 0, 0, 5, 0, 0, 0})).numLoops());
+        assertEquals(0, S2Helper.decodePolygon(Slices.wrappedBuffer(new byte[] {4, 30})).numLoops());
+        // counts no input of this size can hold
+        assertEquals(0, S2Helper.decodePolygon(Slices.wrappedBuffer(new byte[] {1, 0, 0, -1, -1, -1, 127})).numLoops());
+        assertEquals(0, S2Helper.decodePolygon(Slices.wrappedBuffer(new byte[] {1, 0, 0, 1, 0, 0, 0, 1, -1, -1, -1, 127})).numLoops());
+        assertEquals(0, S2Helper.decodePolygon(Slices.wrappedBuffer(new byte[] {4, 30, 1, -1, -1, -1, -1, 7})).numLoops());
+        assertEquals(0, S2Helper.decodePolygon(Slices.wrappedBuffer(new byte[] {4, 30, -1, -1, -1, -1, 7})).numLoops());
+        // versions S2Polygon.encode does not write
+        assertEquals(0, S2Helper.decodePolygon(Slices.wrappedBuffer(new byte[] {2, 0, 0, 0, 0, 0, 0})).numLoops());
+        assertEquals(0, S2Helper.decodePolygon(Slices.wrappedBuffer(new byte[] {-1, 1, 0, 1, 0, 0, 0})).numLoops());
+    }
+
+    @Test
+    public void testCellId()
+    {
+        Random random = new Random(7);
+        for (int i = 0; i < 100_000; i++) {
+            double lat = i % 10 == 0 ? random.nextInt(181) - 90 : random.nextDouble() * 180 - 90;
+            double lon = i % 10 == 0 ? random.nextInt(361) - 180 : random.nextDouble() * 360 - 180;
+            int level = random.nextInt(31);
+            assertEquals(S2CellId.fromLatLng(S2LatLng.fromDegrees(lat, lon)).parent(level).id(), S2Helper.cellId(lat, lon, level));
+        }
+    }
+
+    @Test
+    public void testAllNeighbors()
+    {
+        Random random = new Random(11);
+        for (int i = 0; i < 10_000; i++) {
+            int level = random.nextInt(31);
+            S2CellId cell = S2CellId.fromLatLng(S2LatLng.fromDegrees(random.nextDouble() * 180 - 90, random.nextDouble() * 360 - 180)).parent(level);
+            if (i % 4 == 0) {
+                // cells on a face edge have neighbours on the adjacent face
+                cell = S2CellId.fromFaceIJ(random.nextInt(6), random.nextBoolean() ? 0 : S2CellId.MAX_SIZE - 1, random.nextInt(S2CellId.MAX_SIZE)).parent(level);
+            }
+            int neighborLevel = Math.min(30, level + random.nextInt(4));
+
+            List<S2CellId> expected = new ArrayList<>();
+            cell.getAllNeighbors(neighborLevel, expected);
+            S2CellWriter output = S2CellWriter.ids(S2Helper.allNeighborsCount(cell.id(), neighborLevel));
+            S2Helper.writeAllNeighbors(cell.id(), neighborLevel, output);
+            assertCells(expected, output.build());
+            assertEquals(expected.size(), S2Helper.allNeighborsCount(cell.id(), neighborLevel));
+
+            if (!cell.isLeaf()) {
+                List<S2CellId> children = new ArrayList<>();
+                for (S2CellId child = cell.childBegin(); !child.equals(cell.childEnd()); child = child.next()) {
+                    children.add(child);
+                }
+                output = S2CellWriter.ids(4);
+                S2Helper.writeChildren(cell.id(), output);
+                assertCells(children, output.build());
+            }
+        }
+    }
+
+    @Test
+    public void testAllNeighborsCountLimits()
+    {
+        long face = S2CellId.fromFace(0).id();
+        assertEquals(4 + 4 * (1 << 20), S2Helper.allNeighborsCount(face, 20));
+
+        // 4 + 2^32 leaf cells overflowed an int
+        TrinoException exception = assertThrows(TrinoException.class, () -> S2Helper.allNeighborsCount(face, 30));
+        assertTrue(exception.getMessage().contains("more than an array holds"));
+        exception = assertThrows(TrinoException.class, () -> S2Helper.allNeighborsCount(face, 28));
+        assertTrue(exception.getMessage().contains("exceeds the memory budget"));
+    }
+
+    @Test
+    public void testRadiusCover()
+    {
+        Random random = new Random(13);
+        for (int i = 0; i < 300; i++) {
+            S2CellId cell = S2CellId.fromLatLng(S2LatLng.fromDegrees(random.nextDouble() * 180 - 90, random.nextDouble() * 360 - 180)).parent(10 + random.nextInt(21));
+            if (i % 4 == 0) {
+                cell = S2CellId.fromFaceIJ(random.nextInt(6), random.nextInt(1000), random.nextInt(S2CellId.MAX_SIZE)).parent(cell.level());
+            }
+            int level = 8 + random.nextInt(10);
+            double radius = 100 + random.nextDouble() * 20_000;
+
+            S2Cap cap = S2Helper.radiusCap(cell.id(), radius);
+            ArrayList<S2CellId> expected = new ArrayList<>();
+            S2RegionCoverer.getSimpleCovering(cap, cap.axis(), level, expected);
+            S2CellWriter output = S2CellWriter.ids(16);
+            S2CapCoverer.cover(cap, level, Integer.MAX_VALUE, output);
+            assertCells(expected, output.build());
+        }
+    }
+
+    @Test
+    public void testRadiusCoverMaxCells()
+    {
+        long cellid = S2Helper.cellId(32.1, 34.8, 30);
+        assertEquals(8, S2CellIdFunctions.s2CellCover(cellid, 1000, 13, 8).getPositionCount());
+        TrinoException exception = assertThrows(TrinoException.class, () -> S2CellIdFunctions.s2CellCover(cellid, 1000, 13, 7));
+        assertEquals("Radius cover exceeds 7 cells", exception.getMessage());
+        assertThrows(TrinoException.class, () -> S2CellIdFunctions.s2CellCover(cellid, 100_000, 30));
+    }
+
+    @Test
+    public void testHierarchy()
+    {
+        Random random = new Random(7);
+        for (int i = 0; i < 10_000; i++) {
+            double lat = random.nextDouble() * 180 - 90;
+            double lon = random.nextDouble() * 360 - 180;
+            int minLevel = random.nextInt(31);
+            int maxLevel = minLevel + random.nextInt(31 - minLevel);
+
+            S2CellId leaf = S2CellId.fromLatLng(S2LatLng.fromDegrees(lat, lon));
+            List<S2CellId> expected = new ArrayList<>();
+            for (int level = minLevel; level <= maxLevel; level++) {
+                expected.add(leaf.parent(level));
+            }
+            S2CellWriter output = S2CellWriter.ids(maxLevel - minLevel + 1);
+            S2Helper.writeHierarchy(lat, lon, minLevel, maxLevel, output);
+            assertCells(expected, output.build());
+        }
+    }
+
+    @Test
+    public void testEdgeNeighbors()
+    {
+        Random random = new Random(13);
+        S2CellId[] expected = new S2CellId[4];
+        for (int i = 0; i < 10_000; i++) {
+            int level = random.nextInt(31);
+            S2CellId cell = i % 4 == 0
+                    ? S2CellId.fromFaceIJ(random.nextInt(6), random.nextBoolean() ? 0 : S2CellId.MAX_SIZE - 1, random.nextInt(S2CellId.MAX_SIZE)).parent(level)
+                    : S2CellId.fromLatLng(S2LatLng.fromDegrees(random.nextDouble() * 180 - 90, random.nextDouble() * 360 - 180)).parent(level);
+            cell.getEdgeNeighbors(expected);
+            for (int edge = 0; edge < 4; edge++) {
+                assertEquals(expected[edge].id(), S2Helper.edgeNeighbor(cell.id(), edge));
+            }
+        }
+    }
+
+    @Test
+    public void testParseWktLineString()
+    {
+        S2Polyline line = S2Helper.parseWktLineString(utf8Slice("LINESTRING (34.8 32.1, 34.8 32.1, 34.9 32.2 ,35 32.2)"));
+        assertEquals(3, line.numVertices());
+        assertEquals(S2LatLng.fromDegrees(32.1, 34.8).toPoint(), line.vertex(0));
+
+        assertEquals(0, S2Helper.parseWktLineString(utf8Slice("LINESTRING EMPTY")).numVertices());
+        assertEquals(0, S2Helper.parseWktLineString(utf8Slice("LINESTRING(34.8 32.1)")).numVertices());
+        assertEquals(0, S2Helper.parseWktLineString(utf8Slice("POLYGON((0 0, 1 0, 1 1, 0 0))")).numVertices());
+        assertNull(S2Helper.lineCover(S2Helper.parseWktLineString(utf8Slice("LINESTRING(34.8")), 10));
+    }
+
+    @Test
+    public void testLineCover()
+    {
+        S2Polyline line = S2Helper.parseWktLineString(utf8Slice("LINESTRING(34.8 32.1, 34.9 32.2, 35.0 32.15)"));
+        S2CellUnion cover = S2Helper.lineCover(line, 14);
+        ArrayList<S2CellId> expected = new ArrayList<>();
+        S2Helper.coverer(14, 14, Integer.MAX_VALUE, 1).getCovering(line, expected);
+        assertEquals(expected, cover.cellIds());
+        for (S2CellId cell : cover) {
+            assertEquals(14, cell.level());
+        }
+    }
+
+    @Test
+    public void testTrajectory()
+    {
+        Random random = new Random(17);
+        for (int i = 0; i < 200; i++) {
+            int level = 8 + random.nextInt(10);
+            // tracks around the face 0 and face 1 boundary at longitude 45
+            double lat = random.nextDouble() * 10 - 5;
+            double lon = 40 + random.nextDouble() * 10;
+            int samples = 2 + random.nextInt(8);
+            BlockBuilder lats = DOUBLE.createBlockBuilder(null, samples);
+            BlockBuilder lons = DOUBLE.createBlockBuilder(null, samples);
+            List<S2Point> points = new ArrayList<>();
+            for (int k = 0; k < samples; k++) {
+                DOUBLE.writeDouble(lats, lat);
+                DOUBLE.writeDouble(lons, lon);
+                points.add(S2LatLng.fromDegrees(lat, lon).toPoint());
+                lat += random.nextDouble() * 0.2 - 0.1;
+                lon += random.nextDouble() * 0.2 - 0.1;
+            }
+            S2CellWriter output = S2CellWriter.ids(samples);
+            S2Helper.writeTrajectory(lats.build(), lons.build(), level, output);
+            Block cells = output.build();
+
+            assertEquals(S2CellId.fromPoint(points.get(0)).parent(level).id(), BIGINT.getLong(cells, 0));
+            assertEquals(S2CellId.fromPoint(points.get(samples - 1)).parent(level).id(), BIGINT.getLong(cells, cells.getPositionCount() - 1));
+            Set<Long> visited = new HashSet<>();
+            for (int k = 0; k < cells.getPositionCount(); k++) {
+                long cell = BIGINT.getLong(cells, k);
+                visited.add(cell);
+                if (k > 0) {
+                    // every step crosses one edge
+                    long previous = BIGINT.getLong(cells, k - 1);
+                    boolean neighbor = false;
+                    for (int edge = 0; edge < 4; edge++) {
+                        neighbor |= S2Helper.edgeNeighbor(previous, edge) == cell;
+                    }
+                    assertTrue(neighbor);
+                }
+            }
+            Set<Long> covered = new HashSet<>();
+            for (S2CellId cell : S2Helper.lineCover(new S2Polyline(points), level)) {
+                covered.add(cell.id());
+            }
+            assertEquals(covered, visited);
+        }
+    }
+
+    private static void assertCells(List<S2CellId> expected, Block actual)
+    {
+        assertEquals(expected.size(), actual.getPositionCount());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).id(), BIGINT.getLong(actual, i));
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package io.trino.s2.geometry.functions;
+
+import org.junit.jupiter.api.Test;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Proxy;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TestS2Metrics
+{
+    @Test
+    public void testTimerPercentiles()
+    {
+        S2Timer timer = new S2Timer();
+        assertEquals(0, timer.getP50Nanos());
+
+        for (int i = 0; i < 90; i++) {
+            timer.record(100);
+        }
+        for (int i = 0; i < 10; i++) {
+            timer.record(5000);
+        }
+
+        assertEquals(100, timer.getSampledCount());
+        assertEquals(590.0, timer.getMeanNanos(), 0.0);
+        assertEquals(127, timer.getP50Nanos());
+        assertEquals(127, timer.getP90Nanos());
+        assertEquals(8191, timer.getP99Nanos());
+    }
+
+    @Test
+    public void testTimerCount()
+    {
+        S2Timer timer = new S2Timer();
+        for (int i = 0; i < 1000; i++) {
+            timer.end(timer.start());
+        }
+        assertEquals(1000, timer.getCount());
+        assertTrue(timer.getSampledCount() <= 1000);
+    }
+
+    @Test
+    public void testRegister()
+            throws Exception
+    {
+        S2Metrics.register();
+        S2Metrics.register();
+
+        S2Helper.cover(S2Helper.parseWktPolygon("POLYGON((34.7 32.0, 34.9 32.0, 34.9 32.2, 34.7 32.2, 34.7 32.0))"), 10, 16);
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName metrics = new ObjectName(S2Metrics.DOMAIN + ":name=S2Metrics");
+        assertTrue((Long) server.getAttribute(metrics, "CoverCells") > 0);
+        assertTrue((Long) server.getAttribute(S2Metrics.timerName("parse_wkt"), "Count") > 0);
+        assertTrue((Long) server.getAttribute(S2Metrics.timerName("cover"), "Count") > 0);
+    }
+
+    @Test
+    public void testRegisterFailureIsSkipped()
+    {
+        MBeanServer server = (MBeanServer) Proxy.newProxyInstance(
+                MBeanServer.class.getClassLoader(),
+                new Class<?>[] {MBeanServer.class},
+                (proxy, method, args) -> {
+                    if (method.getName().equals("isRegistered")) {
+                        return false;
+                    }
+                    throw new InstanceAlreadyExistsException(String.valueOf(args[1]));
+                });
+        S2Metrics.register(server);
+    }
+}
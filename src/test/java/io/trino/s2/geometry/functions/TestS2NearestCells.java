@@ -0,0 +1,110 @@
+package io.trino.s2.geometry.functions;
+
+import io.trino.spi.TrinoException;
+import io.trino.spi.block.Block;
+import io.trino.spi.block.BlockBuilder;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static io.trino.spi.type.BigintType.BIGINT;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThrows;
+
+public class TestS2NearestCells
+{
+    @Test
+    public void testMatchesBruteForce()
+    {
+        Random random = new Random(42);
+        // below and above the size where the query stops using brute force itself
+        for (int candidates : new int[] {1, 20, 5000}) {
+            long[] ids = new long[candidates];
+            for (int i = 0; i < candidates; i++) {
+                ids[i] = S2Helper.cellId(32.0 + random.nextDouble(), 34.5 + random.nextDouble(), 10 + random.nextInt(21));
+            }
+            S2NearestCells nearest = S2NearestCells.fromCellIds(ids.clone(), candidates);
+            assertEquals(candidates, nearest.size());
+
+            for (int test = 0; test < 200; test++) {
+                double lat = 31.9 + 1.2 * random.nextDouble();
+                double lon = 34.4 + 1.2 * random.nextDouble();
+                int k = 1 + random.nextInt(10);
+
+                double[] expected = new double[candidates];
+                for (int i = 0; i < candidates; i++) {
+                    expected[i] = S2NearestCells.distance(ids[i], lat, lon);
+                }
+                Arrays.sort(expected);
+
+                long[] actual = nearest.nearest(lat, lon, k);
+                assertEquals(Math.min(k, candidates), actual.length);
+                for (int i = 0; i < actual.length; i++) {
+                    assertEquals(expected[i], S2NearestCells.distance(actual[i], lat, lon), 1e-6);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testInvalidCells()
+    {
+        long valid = S2Helper.cellId(32.1, 34.8, 16);
+        S2NearestCells nearest = S2NearestCells.fromCellIds(new long[] {0, valid, -1}, 3);
+
+        assertEquals(1, nearest.size());
+        assertEquals(valid, nearest.nearest(0, 0, 5)[0]);
+        assertEquals(0, S2NearestCells.fromCellIds(new long[0], 0).nearest(0, 0, 5).length);
+    }
+
+    @Test
+    public void testScanMatchesIndex()
+    {
+        Random random = new Random(7);
+        long[] ids = new long[500];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = S2Helper.cellId(32.0 + random.nextDouble(), 34.5 + random.nextDouble(), 16);
+        }
+        S2NearestCells indexed = S2NearestCells.fromCellIds(ids.clone(), ids.length);
+        S2NearestCells scanning = S2NearestCells.scanning(ids.clone(), ids.length);
+        for (int test = 0; test < 100; test++) {
+            double lat = 32.0 + random.nextDouble();
+            double lon = 34.5 + random.nextDouble();
+            assertArrayEquals(indexed.nearest(lat, lon, 5), scanning.nearest(lat, lon, 5));
+        }
+    }
+
+    @Test
+    public void testIndexesRepeatedBlocks()
+    {
+        BlockBuilder builder = BIGINT.createBlockBuilder(null, 1000);
+        for (int i = 0; i < 1000; i++) {
+            BIGINT.writeLong(builder, S2Helper.cellId(32.0 + i / 1000.0, 34.8, 16));
+        }
+        Block cells = builder.build();
+
+        // scanned the first time, indexed once the block comes again
+        S2NearestCells first = S2NearestCells.fromIdBlock(cells);
+        S2NearestCells second = S2NearestCells.fromIdBlock(cells);
+        assertNotSame(first, second);
+        assertSame(second, S2NearestCells.fromIdBlock(cells));
+        assertArrayEquals(first.nearest(32.5, 34.8, 3), second.nearest(32.5, 34.8, 3));
+        assertEquals(1000, second.size());
+    }
+
+    @Test
+    public void testCheckK()
+    {
+        assertEquals(1, S2NearestCells.checkK(1));
+        assertEquals(S2NearestCells.MAX_K, S2NearestCells.checkK(S2NearestCells.MAX_K));
+        // the scalar and the aggregate functions share the bound and the error
+        TrinoException exception = assertThrows(TrinoException.class, () -> S2NearestCells.checkK(S2NearestCells.MAX_K + 1));
+        assertEquals("k must be between 1 and " + S2NearestCells.MAX_K, exception.getMessage());
+        assertThrows(TrinoException.class, () -> S2NearestCells.checkK(0));
+        assertThrows(TrinoException.class, () -> S2NearestCells.checkK(Long.MAX_VALUE));
+    }
+}
@@ -0,0 +1,51 @@
+package io.trino.s2.geometry.functions;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class TestS2NearestHeap
+{
+    @Test
+    public void testKeepsNearest()
+    {
+        Random random = new Random(42);
+        for (int test = 0; test < 200; test++) {
+            int k = 1 + random.nextInt(50);
+            int count = random.nextInt(300);
+            S2NearestHeap left = new S2NearestHeap(k);
+            S2NearestHeap right = new S2NearestHeap(k);
+            double[] distances = new double[count];
+            for (int i = 0; i < count; i++) {
+                // few distinct distances, so ties are broken on the id
+                distances[i] = random.nextInt(20);
+                (random.nextBoolean() ? left : right).add(i, distances[i]);
+            }
+            left.addAll(S2NearestHeap.deserialize(right.serialize()));
+
+            long[] order = new long[count];
+            for (int i = 0; i < count; i++) {
+                order[i] = (long) distances[i] << 32 | i;
+            }
+            Arrays.sort(order);
+            int expected = Math.min(k, count);
+
+            long[] ids = new long[left.size()];
+            double[] sorted = new double[left.size()];
+            assertEquals(expected, left.sorted(ids, sorted));
+            for (int i = 0; i < expected; i++) {
+                assertEquals(order[i] & 0xFFFFFFFFL, ids[i]);
+                assertEquals(order[i] >>> 32, (long) sorted[i]);
+            }
+
+            // sorting leaves the heap unchanged
+            long[] again = new long[left.size()];
+            left.sorted(again, new double[left.size()]);
+            assertArrayEquals(ids, again);
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package io.trino.s2.geometry.functions;
+
+import com.google.common.geometry.S2CellUnion;
+import com.google.common.geometry.S2Polygon;
+import io.trino.spi.TrinoException;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+public class TestS2ParallelCoverer
+{
+    // shell with a hole around its center, more than 16000 cells at level 16
+    private static final String POLYGON = "POLYGON((34.7 32.0, 34.9 32.0, 34.9 32.2, 34.7 32.2, 34.7 32.0), (34.78 32.08, 34.78 32.12, 34.82 32.12, 34.82 32.08, 34.78 32.08))";
+
+    // daemon worker threads, nothing to shut down
+    private static final ForkJoinPool POOL = new ForkJoinPool(4);
+
+    @Test
+    public void testMatchesSequential()
+    {
+        S2Polygon polygon = S2Helper.parseWktPolygon(POLYGON);
+        int[][] levels = {{16, 16, 1}, {16, 18, 1}, {16, 20, 2}};
+        for (int[] level : levels) {
+            for (boolean interior : new boolean[] {false, true}) {
+                S2CellUnion sequential = S2ParallelCoverer.cover(polygon, level[0], level[1], Integer.MAX_VALUE, level[2], interior, null, Long.MAX_VALUE);
+                S2CellUnion parallel = S2ParallelCoverer.cover(polygon, level[0], level[1], Integer.MAX_VALUE, level[2], interior, POOL, Long.MAX_VALUE);
+                assertEquals(sequential.cellIds(), parallel.cellIds());
+            }
+        }
+    }
+
+    @Test
+    public void testMaxCellsMatchesSequential()
+    {
+        S2Polygon polygon = S2Helper.parseWktPolygon(POLYGON);
+        int[][] levels = {{16, 16, 1}, {16, 20, 1}, {16, 20, 2}};
+        for (int[] level : levels) {
+            for (boolean interior : new boolean[] {false, true}) {
+                S2CellUnion sequential = S2ParallelCoverer.cover(polygon, level[0], level[1], 100, level[2], interior, null, Long.MAX_VALUE);
+                S2CellUnion parallel = S2ParallelCoverer.cover(polygon, level[0], level[1], 100, level[2], interior, POOL, Long.MAX_VALUE);
+                assertEquals(sequential.cellIds(), parallel.cellIds());
+            }
+        }
+    }
+
+    @Test
+    public void testMemoryBudget()
+    {
+        S2Polygon polygon = S2Helper.parseWktPolygon(POLYGON);
+        long budget = 1 << 20;
+        assertEquals(
+                S2ParallelCoverer.cover(polygon, 16, 16, 8, 1, false, null, Long.MAX_VALUE).cellIds(),
+                S2ParallelCoverer.cover(polygon, 16, 16, 8, 1, false, POOL, budget).cellIds());
+        // rejected from the area before covering
+        assertOverBudget(polygon, 18, false, POOL, budget);
+        assertOverBudget(polygon, 16, false, null, 1000 * S2MemoryBudget.BYTES_PER_CELL);
+        // interior coverings are rejected from the cells the coverer queues above minLevel
+        assertOverBudget(polygon, 16, true, POOL, 10 * S2MemoryBudget.BYTES_PER_CELL);
+        assertOverBudget(polygon, 30, true, null, budget);
+        // or once the coverer stops one cell over the budget
+        assertOverBudget(polygon, 16, true, null, 5000 * S2MemoryBudget.BYTES_PER_CELL);
+        assertOverBudget(polygon, 16, true, POOL, 5000 * S2MemoryBudget.BYTES_PER_CELL);
+    }
+
+    @Test
+    public void testBudgetOfWholeCall()
+    {
+        S2Polygon polygon = S2Helper.parseWktPolygon(POLYGON);
+        // fits one sub-region's share of cells but not all of them, down to leaf cells on the boundary
+        long budget = 40_000 * S2MemoryBudget.BYTES_PER_CELL;
+        for (boolean interior : new boolean[] {false, true}) {
+            long start = System.nanoTime();
+            TrinoException exception = assertThrows(TrinoException.class, () -> S2ParallelCoverer.cover(polygon, 16, 30, Integer.MAX_VALUE, 1, interior, POOL, budget));
+            assertTrue(exception.getMessage().endsWith("exceeds the memory budget of " + budget + " bytes"));
+            // the call stopped within a batch per thread of its budget, not a sub-region past it
+            long cells = Long.parseLong(exception.getMessage().replaceAll(".* of at least (\\d+) cells .*", "$1"));
+            assertTrue(cells <= budget / S2MemoryBudget.BYTES_PER_CELL + (long) POOL.getParallelism() * S2ParallelCoverer.BudgetedRegion.BATCH);
+            // the other sub-regions were stopped, not left running
+            assertTrue(POOL.awaitQuiescence(1, TimeUnit.SECONDS));
+            assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(10));
+        }
+    }
+
+    private static void assertOverBudget(S2Polygon polygon, int level, boolean interior, ForkJoinPool pool, long budget)
+    {
+        TrinoException exception = assertThrows(TrinoException.class, () -> S2ParallelCoverer.cover(polygon, level, level, Integer.MAX_VALUE, 1, interior, pool, budget));
+        assertTrue(exception.getMessage().endsWith("exceeds the memory budget of " + budget + " bytes"));
+    }
+}
@@ -0,0 +1,126 @@
+package io.trino.s2.geometry.functions;
+
+import com.google.common.geometry.S2Cell;
+import com.google.common.geometry.S2CellId;
+import com.google.common.geometry.S2CellUnion;
+import com.google.common.geometry.S2Polygon;
+import io.airlift.slice.Slice;
+import org.junit.jupiter.api.Test;
+
+import static io.airlift.slice.Slices.utf8Slice;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class TestS2PolygonCache
+{
+    private static final String POLYGON = "POLYGON((35.2874851279194 33.0771839289384, 35.2997589163715 33.0788380879624, 35.301475530141 33.0697038650441, 35.2871418051654 33.0690565219247, 35.2874851279194 33.0771839289384))";
+
+    @Test
+    public void testCover()
+    {
+        Slice wkt = utf8Slice(POLYGON);
+        long hits = S2PolygonCache.coverHits();
+
+        S2CellUnion cover = S2PolygonCache.cover(wkt, 10, 16);
+        assertEquals(cover, S2Helper.cover(S2Helper.parseWktPolygon(POLYGON), 10, 16));
+        assertSame(cover, S2PolygonCache.cover(utf8Slice(POLYGON), 10, 16));
+        assertEquals(hits + 1, S2PolygonCache.coverHits());
+
+        assertSame(S2PolygonCache.polygon(wkt), S2PolygonCache.polygon(utf8Slice(POLYGON)));
+    }
+
+    @Test
+    public void testMaxCells()
+    {
+        Slice wkt = utf8Slice(POLYGON);
+        S2Polygon polygon = S2PolygonCache.polygon(wkt);
+
+        S2CellUnion cover = S2PolygonCache.cover(wkt, 0, 30, 20, 1);
+        assertTrue(cover.size() <= 20);
+        assertTrue(cover.contains(polygon.getCapBound().axis()));
+        assertTrue(S2PolygonCache.cover(wkt, 0, 30, 200, 1).size() > 20);
+
+        S2CellUnion levelModCover = S2PolygonCache.cover(wkt, 4, 30, 50, 2);
+        for (S2CellId cell : levelModCover.cellIds()) {
+            assertEquals(0, cell.level() % 2);
+        }
+        assertSame(S2Helper.coverer(4, 30, 50, 2), S2Helper.coverer(4, 30, 50, 2));
+    }
+
+    @Test
+    public void testInteriorCover()
+    {
+        Slice wkt = utf8Slice(POLYGON);
+        S2Polygon polygon = S2PolygonCache.polygon(wkt);
+
+        S2CellUnion interior = S2PolygonCache.interiorCover(wkt, 0, 30, 100, 1);
+        assertTrue(interior.size() > 0);
+        assertTrue(interior.size() <= 100);
+        for (S2CellId cell : interior.cellIds()) {
+            assertTrue(polygon.contains(new S2Cell(cell)));
+        }
+        S2CellUnion cover = S2PolygonCache.cover(wkt, 0, 30, 100, 1);
+        assertTrue(cover.contains(interior));
+        assertNotSame(cover, interior);
+    }
+
+    @Test
+    public void testEncodedPolygon()
+    {
+        Slice encoded = S2Helper.encodePolygon(S2Helper.parseWktPolygon(POLYGON));
+
+        assertEquals(S2PolygonCache.polygon(utf8Slice(POLYGON)), S2PolygonCache.decodedPolygon(encoded));
+        assertSame(S2PolygonCache.decodedPolygon(encoded), S2PolygonCache.decodedPolygon(encoded.copy()));
+        assertEquals(S2PolygonCache.cover(utf8Slice(POLYGON), 9, 15), S2PolygonCache.decodedCover(encoded, 9, 15));
+        assertEquals(S2PolygonCache.interiorCover(utf8Slice(POLYGON), 0, 30, 50, 1), S2PolygonCache.decodedInteriorCover(encoded, 0, 30, 50, 1));
+        assertSame(S2PolygonCache.decodedPrepared(encoded), S2PolygonCache.decodedPrepared(encoded.copy()));
+        assertNotSame(S2PolygonCache.prepared(utf8Slice(POLYGON)), S2PolygonCache.decodedPrepared(encoded));
+    }
+
+    @Test
+    public void testInvalidPolygon()
+    {
+        assertNull(S2PolygonCache.cover(utf8Slice("POLYGON((1 2))"), 10));
+        assertNull(S2PolygonCache.cover(utf8Slice("POLYGON((1 2))"), 10));
+        assertNull(S2PolygonCache.interiorCover(utf8Slice("POLYGON((1 2))"), 10, 10, 8, 1));
+    }
+
+    @Test
+    public void testPreparedByIdentity()
+    {
+        // one slice per row of a polygon column, never seen again
+        for (int i = 0; i < 100; i++) {
+            Slice row = utf8Slice("POLYGON((34 30, 35 30, 34.5 " + (31 + i / 10.0) + ", 34 30))");
+            S2PolygonCache.prepared(row);
+            assertFalse(S2PolygonCache.preparedByIdentity(row, false));
+        }
+
+        // a constant is recorded once its value is cached
+        Slice constant = utf8Slice(POLYGON + " ");
+        S2PreparedPolygon prepared = S2PolygonCache.prepared(constant);
+        assertFalse(S2PolygonCache.preparedByIdentity(constant, false));
+        assertSame(prepared, S2PolygonCache.prepared(constant));
+        assertTrue(S2PolygonCache.preparedByIdentity(constant, false));
+        assertSame(prepared, S2PolygonCache.prepared(constant));
+    }
+
+    @Test
+    public void testDecodedPreparedByIdentity()
+    {
+        for (int i = 0; i < 100; i++) {
+            Slice row = S2Helper.encodePolygon(S2Helper.parseWktPolygon("POLYGON((34 30, 35 30, 34.5 " + (31 + i / 10.0) + ", 34 30))"));
+            S2PolygonCache.decodedPrepared(row);
+            assertFalse(S2PolygonCache.preparedByIdentity(row, true));
+        }
+
+        Slice constant = S2Helper.encodePolygon(S2Helper.parseWktPolygon(POLYGON));
+        S2PreparedPolygon prepared = S2PolygonCache.decodedPrepared(constant);
+        assertSame(prepared, S2PolygonCache.decodedPrepared(constant));
+        assertTrue(S2PolygonCache.preparedByIdentity(constant, true));
+        assertFalse(S2PolygonCache.preparedByIdentity(constant, false));
+    }
+}
@@ -0,0 +1,124 @@
+package io.trino.s2.geometry.functions;
+
+import com.google.common.geometry.S2CellId;
+import com.google.common.geometry.S2LatLng;
+import com.google.common.geometry.S2Polygon;
+import org.junit.jupiter.api.Test;
+
+import java.util.Locale;
+import java.util.Random;
+
+import static io.airlift.slice.Slices.utf8Slice;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class TestS2PreparedPolygon
+{
+    // shell with a hole around its center
+    private static final String POLYGON = "POLYGON((34.7 32.0, 34.9 32.0, 34.9 32.2, 34.7 32.2, 34.7 32.0), (34.78 32.08, 34.78 32.12, 34.82 32.12, 34.82 32.08, 34.78 32.08))";
+
+    @Test
+    public void testContainsPoint()
+    {
+        S2Polygon polygon = S2Helper.parseWktPolygon(POLYGON);
+        S2PreparedPolygon prepared = S2PreparedPolygon.prepare(polygon);
+
+        assertTrue(prepared.contains(32.05, 34.75));
+        assertFalse(prepared.contains(32.1, 34.8));
+        assertFalse(prepared.contains(31.9, 34.8));
+
+        Random random = new Random(42);
+        for (int i = 0; i < 100_000; i++) {
+            double lat = 31.95 + 0.3 * random.nextDouble();
+            double lon = 34.65 + 0.3 * random.nextDouble();
+            assertEquals(polygon.contains(S2LatLng.fromDegrees(lat, lon).toPoint()), prepared.contains(lat, lon));
+        }
+    }
+
+    @Test
+    public void testContainsCenter()
+    {
+        S2Polygon polygon = S2Helper.parseWktPolygon(POLYGON);
+        S2PreparedPolygon prepared = S2PreparedPolygon.prepare(polygon);
+
+        Random random = new Random(42);
+        for (int i = 0; i < 100_000; i++) {
+            double lat = 31.95 + 0.3 * random.nextDouble();
+            double lon = 34.65 + 0.3 * random.nextDouble();
+            S2CellId cell = S2CellId.fromLatLng(S2LatLng.fromDegrees(lat, lon)).parent(8 + random.nextInt(23));
+            assertEquals(polygon.contains(cell.toPoint()), prepared.containsCenter(cell.id()));
+        }
+        assertFalse(prepared.containsCenter(0));
+    }
+
+    @Test
+    public void testIntersects()
+    {
+        S2Polygon polygon = S2Helper.parseWktPolygon(POLYGON);
+        S2PreparedPolygon prepared = S2PreparedPolygon.prepare(polygon);
+
+        Random random = new Random(42);
+        for (int i = 0; i < 2_000; i++) {
+            double lat = 31.9 + 0.4 * random.nextDouble();
+            double lon = 34.6 + 0.4 * random.nextDouble();
+            double size = 0.001 + 0.05 * random.nextDouble();
+            S2Polygon square = S2Helper.parseWktPolygon(square(lat, lon, size));
+            S2PreparedPolygon preparedSquare = S2PreparedPolygon.prepare(square);
+
+            assertEquals(polygon.intersects(square), prepared.intersects(preparedSquare));
+            assertEquals(polygon.intersects(square), preparedSquare.intersects(prepared));
+
+            S2Polygon intersection = new S2Polygon();
+            intersection.initToIntersection(polygon, square);
+            assertEquals(intersection.getArea(), prepared.intersectionArea(preparedSquare), 1e-15);
+        }
+        assertFalse(prepared.intersects(S2PolygonCache.prepared(utf8Slice("POLYGON((1 2))"))));
+    }
+
+    @Test
+    public void testArea()
+    {
+        S2Polygon polygon = S2Helper.parseWktPolygon(POLYGON);
+        assertEquals(polygon.getArea(), S2PreparedPolygon.prepare(polygon).area(), 0);
+        assertEquals(0, S2PolygonCache.prepared(utf8Slice("POLYGON((1 2))")).area(), 0);
+
+        // the functions return null for an invalid polygon
+        assertNull(S2GeometryFunctions.s2Area(utf8Slice("POLYGON((1 2))")));
+        assertNull(S2GeometryFunctions.s2IntersectionArea(utf8Slice(POLYGON), utf8Slice("POLYGON EMPTY")));
+        assertEquals(S2GeometryFunctions.squareMeters(polygon.getArea()), S2GeometryFunctions.s2Area(utf8Slice(POLYGON)), 1e-6);
+    }
+
+    private static String square(double lat, double lon, double size)
+    {
+        return String.format(Locale.ROOT, "POLYGON((%f %f, %f %f, %f %f, %f %f, %f %f))",
+                lon, lat, lon + size, lat, lon + size, lat + size, lon, lat + size, lon, lat);
+    }
+
+    @Test
+    public void testCache()
+    {
+        S2PreparedPolygon prepared = S2PolygonCache.prepared(utf8Slice(POLYGON));
+        assertSame(prepared, S2PolygonCache.prepared(utf8Slice(POLYGON)));
+
+        S2PreparedPolygon invalid = S2PolygonCache.prepared(utf8Slice("POLYGON((1 2))"));
+        assertTrue(invalid.isEmpty());
+        assertFalse(invalid.contains(2, 1));
+    }
+
+    @Test
+    public void testCacheHoldsManyPolygons()
+    {
+        // more distinct polygons than the cache held as 1000 entries
+        int zones = 3000;
+        S2PreparedPolygon[] prepared = new S2PreparedPolygon[zones];
+        for (int i = 0; i < zones; i++) {
+            prepared[i] = S2PolygonCache.prepared(utf8Slice(square(30 + i / 100 * 0.01, 34 + i % 100 * 0.01, 0.005)));
+        }
+        for (int i = 0; i < zones; i++) {
+            assertSame(prepared[i], S2PolygonCache.prepared(utf8Slice(square(30 + i / 100 * 0.01, 34 + i % 100 * 0.01, 0.005))));
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package io.trino.s2.geometry.functions;
+
+import com.google.common.geometry.S2CellId;
+import com.google.common.geometry.S2CellUnion;
+import com.google.common.geometry.S2Polygon;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class TestS2StreamingCoverer
+{
+    // shell with a hole around its center
+    private static final String POLYGON = "POLYGON((34.7 32.0, 34.9 32.0, 34.9 32.2, 34.7 32.2, 34.7 32.0), (34.78 32.08, 34.78 32.12, 34.82 32.12, 34.82 32.08, 34.78 32.08))";
+
+    @Test
+    public void testMatchesCoverer()
+    {
+        S2Polygon polygon = S2Helper.parseWktPolygon(POLYGON);
+        int[][] levels = {{0, 10}, {8, 14}, {12, 12}, {10, 16}, {14, 15}};
+        for (int[] level : levels) {
+            long[] actual = walk(polygon, S2Helper.parent(S2Helper.cellId(32.1, 34.8, 30), 0), level[0], level[1], 100);
+            assertArrayEquals(covering(polygon, level[0], level[1]), actual);
+        }
+    }
+
+    @Test
+    public void testRoots()
+    {
+        S2Polygon polygon = S2Helper.parseWktPolygon(POLYGON);
+        S2CellUnion roots = S2Helper.cover(polygon, 0, 11, 8, 1);
+        long[] all = new long[0];
+        for (S2CellId root : roots.cellIds()) {
+            long[] cells = walk(polygon, root.id(), 12, 16, 7);
+            all = Arrays.copyOf(all, all.length + cells.length);
+            System.arraycopy(cells, 0, all, all.length - cells.length, cells.length);
+        }
+        Arrays.sort(all);
+        assertArrayEquals(covering(polygon, 12, 16), all);
+    }
+
+    @Test
+    public void testOutside()
+    {
+        S2Polygon polygon = S2Helper.parseWktPolygon(POLYGON);
+        assertEquals(0, walk(polygon, S2CellId.fromFace(4).id(), 5, 10, 10).length);
+    }
+
+    // the coverer's list covering keeps cells between the levels, unlike its normalized S2CellUnion
+    private static long[] covering(S2Polygon polygon, int minLevel, int maxLevel)
+    {
+        ArrayList<S2CellId> cells = new ArrayList<>();
+        S2Helper.coverer(minLevel, maxLevel, Integer.MAX_VALUE, 1).getCovering(polygon, cells);
+        return cells.stream().mapToLong(S2CellId::id).sorted().toArray();
+    }
+
+    private static long[] walk(S2Polygon polygon, long root, int minLevel, int maxLevel, int batch)
+    {
+        S2StreamingCoverer coverer = new S2StreamingCoverer(polygon, root, minLevel, maxLevel);
+        long[] ids = new long[batch];
+        long[] cells = new long[0];
+        int count;
+        while ((count = coverer.next(ids)) > 0) {
+            cells = Arrays.copyOf(cells, cells.length + count);
+            System.arraycopy(ids, 0, cells, cells.length - count, count);
+        }
+        Arrays.sort(cells);
+        return cells;
+    }
+}